@@ -28,9 +28,11 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.CopyOption;
+import java.nio.file.FileStore;
 import java.nio.file.FileVisitResult;
 import java.nio.file.FileVisitor;
 import java.nio.file.Files;
@@ -40,17 +42,14 @@ import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.FileTime;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import org.apache.commons.exec.CommandLine;
-import org.apache.commons.exec.DefaultExecutor;
-import org.apache.commons.exec.ExecuteException;
-import org.apache.commons.exec.ExecuteWatchdog;
-import org.apache.commons.exec.PumpStreamHandler;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.ng200.openolympus.cerberus.util.ProcessLauncher;
 
 public class FileAccess {
 
@@ -61,6 +60,11 @@ public class FileAccess {
 		}
 	}
 
+	public static long copy(final InputStream in, final Path target,
+			final CopyOption... options) throws IOException {
+		return Files.copy(in, target, options);
+	}
+
 	public static Path copy(final Path source, final Path target,
 			final CopyOption... copyOptions) throws IOException {
 		return Files.copy(source, target, copyOptions);
@@ -77,6 +81,16 @@ public class FileAccess {
 		}
 	}
 
+	public static Path createLink(final Path link, final Path existing)
+			throws IOException {
+		return Files.createLink(link, existing);
+	}
+
+	public static Path createSymbolicLink(final Path link, final Path target,
+			final FileAttribute<?>... attrs) throws IOException {
+		return Files.createSymbolicLink(link, target, attrs);
+	}
+
 	public static void createDirectories(final Path dir,
 			final FileAttribute<?>... attrs) throws IOException {
 		Files.createDirectories(dir, attrs);
@@ -139,10 +153,18 @@ public class FileAccess {
 		return Files.exists(path, options);
 	}
 
+	public static FileStore getFileStore(final Path path) throws IOException {
+		return Files.getFileStore(path);
+	}
+
 	public static boolean isExecutable(final Path path) {
 		return Files.isExecutable(path);
 	}
 
+	public static boolean isDirectory(Path path, LinkOption... options) {
+		return Files.isDirectory(path, options);
+	}
+
 	public static boolean isFile(Path path, LinkOption... options) {
 		return Files.isRegularFile(path, options);
 	}
@@ -152,6 +174,11 @@ public class FileAccess {
 		return new BufferedInputStream(Files.newInputStream(inputFile));
 	}
 
+	public static SeekableByteChannel newByteChannel(final Path path,
+			final OpenOption... options) throws IOException {
+		return Files.newByteChannel(path, options);
+	}
+
 	public static OutputStream newBufferedOutputStream(Path outputFile)
 			throws IOException {
 		return new BufferedOutputStream(Files.newOutputStream(outputFile));
@@ -171,34 +198,44 @@ public class FileAccess {
 		return FileUtils.readFileToByteArray(path.toFile());
 	}
 
+	public static BasicFileAttributes readAttributes(final Path path,
+			final LinkOption... options) throws IOException {
+		return Files.readAttributes(path, BasicFileAttributes.class, options);
+	}
+
+	public static Path move(final Path source, final Path target,
+			final CopyOption... options) throws IOException {
+		return Files.move(source, target, options);
+	}
+
+	public static Path readSymbolicLink(final Path link) throws IOException {
+		return Files.readSymbolicLink(link);
+	}
+
 	public static String readUTF8String(Path verdictFile) throws IOException {
 		return new String(Files.readAllBytes(verdictFile),
 				StandardCharsets.UTF_8);
 	}
 
 	public static void rsync(final Path from, final Path to) throws IOException {
-		final CommandLine commandLine = new CommandLine("/usr/bin/rsync");
-		commandLine.addArgument("-r");
-		commandLine.addArgument("--ignore-errors");
-		commandLine.addArgument(from.toAbsolutePath().toString());
-		commandLine.addArgument(to.toAbsolutePath().toString());
-		final DefaultExecutor executor = new DefaultExecutor();
-
-		executor.setWatchdog(new ExecuteWatchdog(20000)); // 20 seconds for the
-		// sandbox to
-		// complete
 		final ByteArrayOutputStream outAndErr = new ByteArrayOutputStream();
-		executor.setStreamHandler(new PumpStreamHandler(outAndErr));
-		executor.setExitValues(new int[] {
-			0
-		});
+		final ProcessLauncher launcher = new ProcessLauncher("/usr/bin/rsync",
+				"-r", "--ignore-errors", from.toAbsolutePath().toString(), to
+						.toAbsolutePath().toString())
+				.setTimeout(20000) // 20 seconds for rsync to complete
+				.setOutputStream(outAndErr).setRedirectErrorStream(true);
 		try {
-			executor.execute(commandLine);
-		} catch (final ExecuteException e) {
+			launcher.execute();
+		} catch (final ProcessLauncher.ExitValueException e) {
 			throw new IOException("Rsync failed:\n" + outAndErr.toString(), e);
 		}
 	}
 
+	public static Path setLastModifiedTime(final Path path,
+			final FileTime time) throws IOException {
+		return Files.setLastModifiedTime(path, time);
+	}
+
 	public static void walkFileTree(final Path directory,
 			final FileVisitor<Path> visitor) throws IOException {
 		Files.walkFileTree(directory, visitor);
@@ -208,6 +245,11 @@ public class FileAccess {
 		return Files.walk(base);
 	}
 
+	public static Path write(final Path file, final byte[] bytes,
+			final OpenOption... options) throws IOException {
+		return Files.write(file, bytes, options);
+	}
+
 	public static void writeUTF8StringToFile(Path file, String string,
 			OpenOption... options) throws IOException {
 		Files.write(file, string.getBytes(StandardCharsets.UTF_8), options);
@@ -29,7 +29,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 
 public class CompilerResult {
 	public static enum CompileResultType {
-		OK, COMPILE_ERROR, INTERNAL_ERROR
+		OK, COMPILE_ERROR, LIMIT_EXCEEDED, INTERNAL_ERROR
 	}
 
 	private CompilerError error;
@@ -22,32 +22,48 @@
  */
 package org.ng200.openolympus.cerberus;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.stream.Collectors;
 
 import org.ng200.openolympus.FileAccess;
 import org.ng200.openolympus.SharedTemporaryStorage;
 import org.ng200.openolympus.SharedTemporaryStorageFactory;
+import org.ng200.openolympus.cerberus.compilers.CompilationCache;
+import org.ng200.openolympus.cerberus.compilers.CompilationSandbox;
+import org.ng200.openolympus.cerberus.compilers.CompilationScheduler;
 import org.ng200.openolympus.cerberus.compilers.Compiler;
 import org.ng200.openolympus.cerberus.compilers.FPCCompiler;
 import org.ng200.openolympus.cerberus.compilers.GNUCompiler;
+import org.ng200.openolympus.cerberus.compilers.InProcessJavaCompiler;
 import org.ng200.openolympus.cerberus.compilers.JavaCompiler;
 import org.ng200.openolympus.cerberus.exceptions.CompilationException;
+import org.ng200.openolympus.cerberus.exceptions.CompilationLimitExceeded;
 import org.ng200.openolympus.cerberus.exceptions.CompilerError;
+import org.ng200.openolympus.cerberus.executors.Executor;
+import org.ng200.openolympus.cerberus.executors.JailPool;
 import org.ng200.openolympus.cerberus.executors.JavaExecutor;
-import org.ng200.openolympus.cerberus.executors.OpenOlympusWatchdogExecutor;
+import org.ng200.openolympus.cerberus.executors.JavaProvisioningCache;
+import org.ng200.openolympus.cerberus.executors.NamespaceExecutor;
 import org.ng200.openolympus.cerberus.executors.SandboxedExecutor;
 import org.ng200.openolympus.cerberus.util.Lists;
 import org.ng200.openolympus.cerberus.util.TemporaryStorage;
 import org.ng200.openolympus.cerberus.verifiers.FileExistsVerifier;
+import org.ng200.openolympus.cerberus.verifiers.StreamingWhitespaceTokenizedVerifier;
+import org.ng200.openolympus.cerberus.verifiers.Verifier;
 import org.ng200.openolympus.cerberus.verifiers.WhitespaceTokenizedVerifier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -55,6 +71,27 @@ import org.slf4j.LoggerFactory;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
 public class DefaultSolutionJudge extends SolutionJudge {
+	private class ExecutorLease implements AutoCloseable {
+		private final Executor executor;
+
+		public ExecutorLease(final Executor executor) {
+			this.executor = executor;
+		}
+
+		@Override
+		public void close() throws IOException {
+			DefaultSolutionJudge.this.releaseExecutor(this.executor);
+		}
+
+		public Executor getExecutor() {
+			return this.executor;
+		}
+	}
+
+	public static enum ExecutorType {
+		WATCHDOG, NAMESPACE
+	}
+
 	private static enum ProgramLanguage {
 		CPP, FPC, JAVA
 	}
@@ -67,6 +104,14 @@ public class DefaultSolutionJudge extends SolutionJudge {
 	private static final Logger logger = LoggerFactory
 			.getLogger(DefaultSolutionJudge.class);
 
+	static {
+		Janitor.registerCleanupStep((judge) -> {
+			if (judge instanceof DefaultSolutionJudge) {
+				((DefaultSolutionJudge) judge).closeIdleExecutors();
+			}
+		});
+	}
+
 	private transient TemporaryStorage storage;
 	private SharedTemporaryStorage sharedStorage;
 	private String inputFileName;
@@ -80,6 +125,16 @@ public class DefaultSolutionJudge extends SolutionJudge {
 
 	private ProgramLanguage programLanguage = null;
 
+	private ExecutorType executorType = ExecutorType.WATCHDOG;
+	private boolean reuseExecutors = true;
+	private boolean streamingVerification = true;
+	private boolean lowCommitHeap = false;
+	private boolean sandboxedCompilation = false;
+	private boolean staticLinking = false;
+	private String verifier = WhitespaceTokenizedVerifier.class.getName();
+	private transient Deque<Executor> idleExecutors;
+	private transient JavaProvisioningCache javaProvisioningCache;
+
 	public DefaultSolutionJudge() {
 		// Serialization constructor
 	}
@@ -98,13 +153,12 @@ public class DefaultSolutionJudge extends SolutionJudge {
 	}
 
 	protected void checkAnswer(final SolutionResultBuilder resultBuilder,
-			final Path inputFile, Path outputFile, final byte[] bytes,
-			final BigDecimal maximumScore) {
+			final Path inputFile, final Path outputFile,
+			final Path userOutputFile, final BigDecimal maximumScore) {
 		resultBuilder.checkingStage(
 				() -> {
-					return new WhitespaceTokenizedVerifier(outputFile)
-							.isAnswerCorrect(bytes,
-									Charset.forName(this.charset));
+					return this.createVerifier().verify(userOutputFile,
+							outputFile, Charset.forName(this.charset));
 				}).checkingStage(
 				() -> {
 					resultBuilder.setScore(maximumScore);
@@ -114,16 +168,33 @@ public class DefaultSolutionJudge extends SolutionJudge {
 				});
 	}
 
-	private void checkAnswerFile(final SolutionResultBuilder resultBuilder,
-			final BigDecimal maximumScore, final Path inputFile,
-			final Path outputFile, final Path userOutputFile)
-			throws IOException {
-		this.checkAnswer(resultBuilder, inputFile, outputFile,
-				FileAccess.readAllBytes(userOutputFile), maximumScore);
+	private void checkStreamedAnswer(final SolutionResultBuilder resultBuilder,
+			final StreamingWhitespaceTokenizedVerifier verifier,
+			final BigDecimal maximumScore) {
+		resultBuilder.checkingStage(verifier::getResult).checkingStage(() -> {
+			resultBuilder.setScore(maximumScore);
+			return new VerifierResult(AnswerCheckResult.CheckingResultType.OK,
+					"Successful judgement.");
+		});
+	}
+
+	private void closeIdleExecutors() {
+		final Deque<Executor> executors = this
+				.getIdleExecutors();
+		Executor executor;
+		while ((executor = executors.poll()) != null) {
+			try {
+				executor.close();
+			} catch (final IOException e) {
+				DefaultSolutionJudge.logger.error(
+						"Couldn't close idle executor: {}", e);
+			}
+		}
 	}
 
 	@Override
 	public void closeLocal() throws IOException {
+		this.closeIdleExecutors();
 		this.getStorage().close();
 	}
 
@@ -134,14 +205,49 @@ public class DefaultSolutionJudge extends SolutionJudge {
 
 	@Override
 	public void compile(final List<Path> sources, Properties properties) {
+		this.compileAsync(sources, properties).join();
+	}
+
+	/**
+	 * Queues the compilation on the {@link CompilationScheduler}. The
+	 * "compilationPriority" property orders it against other queued
+	 * compilations.
+	 */
+	public CompletableFuture<SolutionResult> compileAsync(
+			final List<Path> sources, final Properties properties) {
+		final String fileName = sources.isEmpty() ? "" : sources.get(0)
+				.getFileName().toString();
+		return CompilationScheduler.getDefault().submit(
+				fileName.substring(fileName.lastIndexOf('.') + 1),
+				Integer.parseInt(properties.getProperty("compilationPriority",
+						"0")), () -> {
+					this.compileNow(sources);
+					return this.getCurrentStatus();
+				}).exceptionally(throwable -> {
+			// The compilation couldn't be queued or run
+			synchronized (this.compiled) {
+				this.baseResultBuilder.compileStage(() -> {
+					throw throwable instanceof Exception ? (Exception) throwable
+							: new CompletionException(throwable);
+				});
+			}
+			return this.getCurrentStatus();
+		});
+	}
+
+	private void compileNow(final List<Path> sources) {
 		synchronized (this.compiled) {
 			this.baseResultBuilder
 					.compileStage(() -> {
-						if (sources.size() != 1) {
+						if (sources.isEmpty()) {
 							throw new IllegalArgumentException(
-									"DefaultSolutionJudge only supports one source file!");
+									"There is no source file to compile!");
 						}
+						// The contestant's source comes first, the rest are
+						// graders and headers that are linked with it
 						final Path sourceFile = sources.get(0);
+						final List<Path> graders = sources.subList(1,
+								sources.size());
 
 						if (sourceFile.getFileName().toString()
 								.endsWith(".cpp")) {
@@ -151,7 +257,9 @@ public class DefaultSolutionJudge extends SolutionJudge {
 							FileAccess.copy(sources.get(0), temporaryCopy);
 
 							this.programLanguage = ProgramLanguage.CPP;
-							return this.compileCpp(temporaryCopy);
+							return this.compileCpp(temporaryCopy, this
+									.copyGraders(graders, this.sharedStorage
+											.getPath(), temporaryCopy));
 						} else if (sourceFile.getFileName().toString()
 								.endsWith(".pas")) {
 							final Path temporaryCopy = this.sharedStorage
@@ -160,7 +268,11 @@ public class DefaultSolutionJudge extends SolutionJudge {
 							FileAccess.copy(sources.get(0), temporaryCopy);
 
 							this.programLanguage = ProgramLanguage.FPC;
-							return this.compileFpc(temporaryCopy);
+							// Kept apart so that FPC uses the compiled units
+							return this.compileFpc(temporaryCopy, this
+									.copyGraders(graders, this.sharedStorage
+											.getPath().resolve("graders"),
+											temporaryCopy));
 						} else if (sourceFile.getFileName().toString()
 								.endsWith(".java")) {
 							final Path temporaryCopy = this.sharedStorage
@@ -169,7 +281,9 @@ public class DefaultSolutionJudge extends SolutionJudge {
 							FileAccess.copy(sources.get(0), temporaryCopy);
 
 							this.programLanguage = ProgramLanguage.JAVA;
-							return this.compileJava(temporaryCopy);
+							return this.compileJava(temporaryCopy, this
+									.copyGraders(graders, this.sharedStorage
+											.getPath(), temporaryCopy));
 						} else {
 							return new CompilerResult(
 									CompilerResult.CompileResultType.COMPILE_ERROR,
@@ -180,17 +294,27 @@ public class DefaultSolutionJudge extends SolutionJudge {
 		}
 	}
 
-	private CompilerResult compile(final Path sourceFile,
-			final Compiler compiler) throws CompilationException, IOException {
-		assert FileAccess.exists(sourceFile);
+	private CompilerResult compile(final List<Path> sourceFiles,
+			final List<Path> dependencies, final Compiler compiler)
+			throws CompilationException, IOException {
+		assert sourceFiles.stream().allMatch(FileAccess::exists);
 		CompilerResult result;
 		try {
-			compiler.compile(Lists.from(sourceFile), this.program,
-					new HashMap<String, Object>());
+			final CompilationCache cache = CompilationCache.getDefault();
+			if (cache != null) {
+				cache.compile(compiler, sourceFiles, dependencies,
+						this.program, new HashMap<String, Object>());
+			} else {
+				compiler.compile(sourceFiles, this.program,
+						new HashMap<String, Object>());
+			}
 
 			result = new CompilerResult(CompilerResult.CompileResultType.OK);
 
 			this.compiled = true;
+		} catch (final CompilationLimitExceeded error) {
+			result = new CompilerResult(
+					CompilerResult.CompileResultType.LIMIT_EXCEEDED, error);
 		} catch (final CompilerError error) {
 			result = new CompilerResult(
 					CompilerResult.CompileResultType.COMPILE_ERROR, error);
@@ -198,23 +322,129 @@ public class DefaultSolutionJudge extends SolutionJudge {
 		return result;
 	}
 
-	private CompilerResult compileCpp(final Path sourceFile)
-			throws CompilationException, IOException {
+	private CompilerResult compileCpp(final Path sourceFile,
+			final List<Path> graders) throws CompilationException, IOException {
+		final List<Path> sourceFiles = new ArrayList<>();
+		sourceFiles.add(sourceFile);
+		final List<Path> headers = graders.stream()
+				.filter(grader -> !DefaultSolutionJudge.isCppSource(grader))
+				.collect(Collectors.toList());
+		for (final Path grader : graders) {
+			if (!DefaultSolutionJudge.isCppSource(grader)) {
+				continue;
+			}
+			final String name = grader.getFileName().toString();
+			final Path object = grader.resolveSibling(name.substring(0,
+					name.lastIndexOf('.'))
+					+ ".o");
+			final GNUCompiler compiler = new GNUCompiler();
+			compiler.addArgument("-O2");
+			compiler.addArgument("-c");
+			this.compileGrader(compiler, grader, headers, object);
+			sourceFiles.add(object);
+		}
+
 		final GNUCompiler compiler = new GNUCompiler();
 		compiler.addArgument("-O2");
-		return this.compile(sourceFile, compiler);
-	}
+		if (this.staticLinking) {
+			compiler.linkStatically();
+		}
+		compiler.setSandbox(this.getCompilationSandbox("cpp"));
+		return this.compile(sourceFiles, headers, compiler);
+	}
+
+	private CompilerResult compileFpc(final Path sourceFile,
+			final List<Path> graders) throws CompilationException, IOException {
+		final List<Path> sourceFiles = new ArrayList<>();
+		sourceFiles.add(sourceFile);
+		final List<Path> units = graders.stream()
+				.filter(grader -> grader.getFileName().toString()
+						.endsWith(".pas")).collect(Collectors.toList());
+		if (!units.isEmpty()) {
+			final Path unitDirectory = this.sharedStorage.getPath().resolve(
+					"units");
+			FileAccess.createDirectories(unitDirectory);
+			final FPCCompiler compiler = new FPCCompiler();
+			compiler.addArgument("-O2");
+			this.compileGrader(compiler, units, graders, unitDirectory);
+			sourceFiles.add(unitDirectory);
+		}
 
-	private CompilerResult compileFpc(final Path sourceFile)
-			throws CompilationException, IOException {
 		final FPCCompiler compiler = new FPCCompiler();
 		compiler.addArgument("-O2");
-		return this.compile(sourceFile, compiler);
+		if (this.staticLinking) {
+			compiler.linkStatically();
+		}
+		compiler.setSandbox(this.getCompilationSandbox("pas"));
+		return this.compile(sourceFiles, Lists.from(), compiler);
 	}
 
-	private CompilerResult compileJava(final Path sourceFile)
+	/**
+	 * Java graders call the contestant's classes, so they can't be compiled
+	 * ahead of them.
+	 */
+	private CompilerResult compileJava(final Path sourceFile,
+			final List<Path> graders) throws CompilationException, IOException {
+		final List<Path> sourceFiles = new ArrayList<>();
+		sourceFiles.add(sourceFile);
+		sourceFiles.addAll(graders);
+		// The in-process compiler can't be confined by a sandbox
+		if (this.sandboxedCompilation || !InProcessJavaCompiler.isAvailable()) {
+			final JavaCompiler compiler = new JavaCompiler();
+			compiler.setSandbox(this.getCompilationSandbox("java"));
+			return this.compile(sourceFiles, Lists.from(), compiler);
+		}
+		return this.compile(sourceFiles, Lists.from(),
+				new InProcessJavaCompiler());
+	}
+
+	private void compileGrader(final Compiler compiler, final Path grader,
+			final List<Path> dependencies, final Path output)
 			throws CompilationException, IOException {
-		return this.compile(sourceFile, new JavaCompiler());
+		this.compileGrader(compiler, Lists.from(grader), dependencies, output);
+	}
+
+	/**
+	 * Compiles graders through the grader cache, so that each of them is
+	 * only compiled once per problem and toolchain.
+	 */
+	private void compileGrader(final Compiler compiler,
+			final List<Path> graders, final List<Path> dependencies,
+			final Path output) throws CompilationException, IOException {
+		try {
+			final CompilationCache cache = CompilationCache.getGraderCache();
+			if (cache != null) {
+				cache.compile(compiler, graders, dependencies, output,
+						new HashMap<String, Object>());
+			} else {
+				compiler.compile(graders, output,
+						new HashMap<String, Object>());
+			}
+		} catch (final CompilerError error) {
+			// The problem is broken, not the submission
+			throw new CompilationException("Couldn't compile the graders "
+					+ graders + ": " + error.getErrors());
+		}
+	}
+
+	/**
+	 * Copies graders into the directory under their own names.
+	 */
+	private List<Path> copyGraders(final List<Path> graders,
+			final Path directory, final Path sourceFile) throws IOException {
+		FileAccess.createDirectories(directory);
+		final List<Path> copies = new ArrayList<>();
+		for (final Path grader : graders) {
+			final Path copy = directory.resolve(grader.getFileName()
+					.toString());
+			if (copy.equals(sourceFile)) {
+				throw new IllegalArgumentException("A grader can't be named "
+						+ sourceFile.getFileName());
+			}
+			FileAccess.copy(grader, copy, StandardCopyOption.REPLACE_EXISTING);
+			copies.add(copy);
+		}
+		return copies;
 	}
 
 	private void executeWithConsoleInput(final List<Path> testFiles,
@@ -240,11 +470,22 @@ public class DefaultSolutionJudge extends SolutionJudge {
 						() -> new IllegalArgumentException(
 								"Input file is not supplied"));
 
-		final ByteArrayOutputStream out = new ByteArrayOutputStream();
-		final ByteArrayOutputStream err = new ByteArrayOutputStream();
+		final boolean streaming = checkAnswer && this.streamingVerification;
+
+		Path userOutputFile;
+		try {
+			userOutputFile = this.getStorage().getPath()
+					.resolve(this.outputFileName + ".user");
+		} catch (final IOException e) {
+			throw new RuntimeException(e);
+		}
 
-		try (InputStream in = FileAccess.newBufferedInputStream(inputFile);
-				OpenOlympusWatchdogExecutor executor = this.getExecutor()) {
+		try (StreamingWhitespaceTokenizedVerifier verifier = streaming ? new StreamingWhitespaceTokenizedVerifier(
+						outputFile, Charset.forName(this.charset)) : null;
+				OutputStream out = checkAnswer && !streaming ? FileAccess
+						.newBufferedOutputStream(userOutputFile) : null;
+				ExecutorLease lease = this.leaseExecutor()) {
+			final Executor executor = lease.getExecutor();
 			resultBuilder.runtimeStage(() -> {
 				executor.setCpuLimit(
 						Long.valueOf(properties.getProperty("cpuTimeLimit")))
@@ -258,13 +499,26 @@ public class DefaultSolutionJudge extends SolutionJudge {
 								Long.valueOf(properties
 										.getProperty("diskLimit")));
 
-				executor.setOutputStream(out).setErrorStream(err)
-						.setInputStream(in);
-				return executor.execute(this.program);
+				executor.setOutputStream(streaming ? verifier : out)
+						.setErrorStream(null).setInputStream(null)
+						.setInputFile(inputFile);
+				final ExecutionResult result = executor.execute(this.program);
+				if (streaming
+						&& verifier.isMismatch()
+						&& result.getResultType() == ExecutionResult.ExecutionResultType.ABNORMAL_TERMINATION) {
+					// The program was stopped because its output was already
+					// wrong. A runtime error is kept: it's a verdict the
+					// program earned by itself.
+					result.setResultType(ExecutionResult.ExecutionResultType.OK);
+				}
+				return result;
 			});
-			if (checkAnswer) {
+			if (streaming) {
+				this.checkStreamedAnswer(resultBuilder, verifier, maximumScore);
+			} else if (checkAnswer) {
+				out.close();
 				this.checkAnswer(resultBuilder, inputFile, outputFile,
-						out.toByteArray(), maximumScore);
+						userOutputFile, maximumScore);
 			}
 		} catch (final IOException e) {
 			throw new RuntimeException(
@@ -303,7 +557,8 @@ public class DefaultSolutionJudge extends SolutionJudge {
 			throw new RuntimeException(e);
 		}
 
-		try (OpenOlympusWatchdogExecutor executor = this.getExecutor()) {
+		try (ExecutorLease lease = this.leaseExecutor()) {
+			final Executor executor = lease.getExecutor();
 
 			resultBuilder.runtimeStage(() -> {
 				executor.setCpuLimit(
@@ -319,7 +574,7 @@ public class DefaultSolutionJudge extends SolutionJudge {
 										.getProperty("diskLimit")));
 
 				executor.setOutputStream(null).setErrorStream(null)
-						.setInputStream(null);
+						.setInputStream(null).setInputFile(null);
 
 				executor.provideFile(inputFile);
 				final ExecutionResult result = executor.execute(this.program);
@@ -335,8 +590,8 @@ public class DefaultSolutionJudge extends SolutionJudge {
 					.checkingStage(
 							() -> FileExistsVerifier.fileExists(userOutputFile));
 			if (checkAnswer) {
-				this.checkAnswerFile(resultBuilder, maximumScore, inputFile,
-						outputFile, userOutputFile);
+				this.checkAnswer(resultBuilder, inputFile, outputFile,
+						userOutputFile, maximumScore);
 			}
 		} catch (final IOException e) {
 			throw new RuntimeException(
@@ -344,6 +599,19 @@ public class DefaultSolutionJudge extends SolutionJudge {
 		}
 	}
 
+	/**
+	 * @return a new instance of the verifier class that the "verifier"
+	 *         property names
+	 */
+	private Verifier createVerifier() throws ReflectiveOperationException {
+		return Class.forName(this.verifier).asSubclass(Verifier.class)
+				.newInstance();
+	}
+
+	public ExecutorType getExecutorType() {
+		return this.executorType;
+	}
+
 	public SolutionResultBuilder getBaseResultBuilder() {
 		return this.baseResultBuilder;
 	}
@@ -352,6 +620,12 @@ public class DefaultSolutionJudge extends SolutionJudge {
 		return this.charset;
 	}
 
+	private static boolean isCppSource(final Path file) {
+		final String name = file.getFileName().toString();
+		return name.endsWith(".cpp") || name.endsWith(".cc")
+				|| name.endsWith(".cxx");
+	}
+
 	public Boolean getCompiled() {
 		return this.compiled;
 	}
@@ -360,7 +634,7 @@ public class DefaultSolutionJudge extends SolutionJudge {
 		return this.baseResultBuilder.build();
 	}
 
-	private OpenOlympusWatchdogExecutor getExecutor() throws IOException {
+	private Executor getExecutor() throws IOException {
 		if (this.programLanguage == null) {
 			throw new IllegalStateException(
 					"Unknown file type: should've failed during compilation.");
@@ -368,21 +642,66 @@ public class DefaultSolutionJudge extends SolutionJudge {
 		switch (this.programLanguage) {
 		case CPP:
 		case FPC:
-			return new SandboxedExecutor(this);
+			final JailPool jailPool = JailPool.forProfile(this
+					.getJailProfile());
+			if (this.executorType == ExecutorType.NAMESPACE) {
+				return new NamespaceExecutor(jailPool);
+			}
+			return new SandboxedExecutor(jailPool);
 		case JAVA:
+			final JavaExecutor executor;
 			if (this.consoleInput) {
-				return new JavaExecutor(this, Lists.from());
+				executor = new JavaExecutor(this, Lists.from(),
+						this.getJavaProvisioningCache());
 			} else {
-				return new JavaExecutor(this, Lists.from(this.outputFileName));
+				executor = new JavaExecutor(this,
+						Lists.from(this.outputFileName),
+						this.getJavaProvisioningCache());
 			}
+			executor.setLowCommitHeap(this.lowCommitHeap);
+			return executor;
 		}
 		return null;
 	}
 
+	private synchronized Deque<Executor> getIdleExecutors() {
+		if (this.idleExecutors == null) {
+			this.idleExecutors = new ConcurrentLinkedDeque<>();
+		}
+		return this.idleExecutors;
+	}
+
+	/**
+	 * @return the sandbox to compile sources with the given extension in, or
+	 *         null if compilers run directly on the host
+	 */
+	private CompilationSandbox getCompilationSandbox(final String language) {
+		if (!this.sandboxedCompilation) {
+			return null;
+		}
+		return CompilationSandbox.forLanguage(language,
+				this.executorType == ExecutorType.NAMESPACE);
+	}
+
+	private String getJailProfile() {
+		// Static programs don't need the shared libraries in the template
+		if (this.staticLinking) {
+			return JailPool.STATIC_PROFILE;
+		}
+		return this.programLanguage == ProgramLanguage.CPP ? "cpp" : "pas";
+	}
+
 	public String getInputFileName() {
 		return this.inputFileName;
 	}
 
+	private synchronized JavaProvisioningCache getJavaProvisioningCache() {
+		if (this.javaProvisioningCache == null) {
+			this.javaProvisioningCache = new JavaProvisioningCache(this);
+		}
+		return this.javaProvisioningCache;
+	}
+
 	public String getOutputFileName() {
 		return this.outputFileName;
 	}
@@ -423,6 +742,58 @@ public class DefaultSolutionJudge extends SolutionJudge {
 		return this.consoleInput;
 	}
 
+	public boolean isReuseExecutors() {
+		return this.reuseExecutors;
+	}
+
+	public boolean isLowCommitHeap() {
+		return this.lowCommitHeap;
+	}
+
+	public boolean isSandboxedCompilation() {
+		return this.sandboxedCompilation;
+	}
+
+	public boolean isStaticLinking() {
+		return this.staticLinking;
+	}
+
+	public String getVerifier() {
+		return this.verifier;
+	}
+
+	public boolean isStreamingVerification() {
+		return this.streamingVerification;
+	}
+
+	private ExecutorLease leaseExecutor() throws IOException {
+		if (this.reuseExecutors) {
+			final Executor executor = this
+					.getIdleExecutors().poll();
+			if (executor != null) {
+				return new ExecutorLease(executor);
+			}
+		}
+		return new ExecutorLease(this.getExecutor());
+	}
+
+	private void releaseExecutor(final Executor executor)
+			throws IOException {
+		if (!this.reuseExecutors) {
+			executor.close();
+			return;
+		}
+		try {
+			executor.reset();
+		} catch (final IOException e) {
+			DefaultSolutionJudge.logger.error(
+					"Couldn't reset executor, discarding it: {}", e);
+			executor.close();
+			return;
+		}
+		this.getIdleExecutors().push(executor);
+	}
+
 	@Override
 	public SolutionResult run(final List<Path> testFiles,
 			final boolean checkAnswer, final BigDecimal maximumScore,
@@ -459,6 +830,10 @@ public class DefaultSolutionJudge extends SolutionJudge {
 		this.consoleInput = consoleInput;
 	}
 
+	public void setExecutorType(ExecutorType executorType) {
+		this.executorType = executorType;
+	}
+
 	public void setInputFileName(String inputFileName) {
 		this.inputFileName = inputFileName;
 	}
@@ -475,6 +850,35 @@ public class DefaultSolutionJudge extends SolutionJudge {
 		this.programLanguage = programLanguage;
 	}
 
+	public void setReuseExecutors(boolean reuseExecutors) {
+		this.reuseExecutors = reuseExecutors;
+	}
+
+	public void setLowCommitHeap(boolean lowCommitHeap) {
+		this.lowCommitHeap = lowCommitHeap;
+	}
+
+	public void setSandboxedCompilation(boolean sandboxedCompilation) {
+		this.sandboxedCompilation = sandboxedCompilation;
+	}
+
+	public void setStaticLinking(boolean staticLinking) {
+		this.staticLinking = staticLinking;
+	}
+
+	/**
+	 * @param verifier
+	 *            the name of a {@link Verifier} class with a public no-arg
+	 *            constructor
+	 */
+	public void setVerifier(String verifier) {
+		this.verifier = verifier;
+	}
+
+	public void setStreamingVerification(boolean streamingVerification) {
+		this.streamingVerification = streamingVerification;
+	}
+
 	public void setSharedStorage(SharedTemporaryStorage sharedStorage) {
 		this.sharedStorage = sharedStorage;
 	}
@@ -39,9 +39,26 @@ public class DefaultSolutionJudgeFactory implements SolutionJudgeFactory {
 	public SolutionJudge createJudge(final Properties properties,
 			final SharedTemporaryStorageFactory sharedTemporaryStorageFactory) {
 		try {
-			return new DefaultSolutionJudge("input.txt", "output.txt",
-					Boolean.valueOf(properties.getProperty("consoleIO")),
-					"US-ASCII", sharedTemporaryStorageFactory);
+			final DefaultSolutionJudge judge = new DefaultSolutionJudge(
+					"input.txt", "output.txt", Boolean.valueOf(properties
+							.getProperty("consoleIO")), "US-ASCII",
+					sharedTemporaryStorageFactory);
+			judge.setReuseExecutors(Boolean.valueOf(properties.getProperty(
+					"reuseExecutors", "true")));
+			judge.setExecutorType(DefaultSolutionJudge.ExecutorType
+					.valueOf(properties.getProperty("executor", "watchdog")
+							.toUpperCase()));
+			judge.setStreamingVerification(Boolean.valueOf(properties
+					.getProperty("streamingVerification", "true")));
+			judge.setLowCommitHeap(Boolean.valueOf(properties.getProperty(
+					"lowCommitHeap", "false")));
+			judge.setSandboxedCompilation(Boolean.valueOf(properties
+					.getProperty("sandboxedCompilation", "false")));
+			judge.setStaticLinking(Boolean.valueOf(properties.getProperty(
+					"staticLinking", "false")));
+			judge.setVerifier(properties.getProperty("verifier",
+					judge.getVerifier()));
+			return judge;
 		} catch (final IOException e) {
 			throw new RuntimeException("Couldn't create solution judge: ", e);
 		}
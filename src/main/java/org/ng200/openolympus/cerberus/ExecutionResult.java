@@ -33,6 +33,7 @@ public class ExecutionResult {
 	private long realTime;
 	private long cpuTime;
 	private long syscall;
+	private String diagnostics;
 	
 	public ExecutionResult(){
 		// Serialization constructor
@@ -52,6 +53,13 @@ public class ExecutionResult {
 		return this.cpuTime;
 	}
 
+	/**
+	 * @return a description of what went wrong for internal errors, or null
+	 */
+	public String getDiagnostics() {
+		return this.diagnostics;
+	}
+
 	public long getMemoryPeak() {
 		return this.memoryPeak;
 	}
@@ -72,6 +80,10 @@ public class ExecutionResult {
 		this.cpuTime = cpuTime;
 	}
 
+	public void setDiagnostics(final String diagnostics) {
+		this.diagnostics = diagnostics;
+	}
+
 	public void setMemoryPeak(final long memoryPeak) {
 		this.memoryPeak = memoryPeak;
 	}
@@ -44,6 +44,8 @@ public class SolutionResult implements Serializable {
 
 		COMPILE_ERROR("solution.result.compileError"),
 
+		COMPILATION_LIMIT("solution.result.compilationLimit"),
+
 		PRESENTATION_ERROR("solution.result.presentationError"),
 
 		WRONG_ANSWER("solution.result.wrongAnswer"),
@@ -26,6 +26,7 @@ import java.io.Serializable;
 import java.math.BigDecimal;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.ng200.openolympus.cerberus.exceptions.CompilerError;
 import org.ng200.openolympus.cerberus.util.ExceptionalProducer;
@@ -151,35 +152,107 @@ public class SolutionResultBuilder implements Serializable {
 				this.errorMessages, this.checkingResult);
 	}
 
+	private SolutionResultBuilder applyCheckingResult(
+			final AnswerCheckResult result) {
+		this.checkingResult = result;
+		switch (this.checkingResult.getCheckingResultType()) {
+		case OK:
+			this.setStatus(SolutionResult.Result.OK);
+			this.succeed(SolutionCheckingStage.ANSWER);
+			return this;
+		case PRESENTATION_ERROR:
+			this.setStatus(SolutionResult.Result.PRESENTATION_ERROR);
+			this.fail(SolutionCheckingStage.ANSWER,
+					"#answers.presentationError");
+			return this;
+		case WRONG_ANSWER:
+			this.setStatus(SolutionResult.Result.WRONG_ANSWER);
+			this.fail(SolutionCheckingStage.ANSWER, "#answers.wrongAnswer");
+			return this;
+		}
+		return this;
+	}
+
+	private SolutionResultBuilder applyExecutionResult(
+			final ExecutionResult result) {
+		this.cpuTime = result.getCpuTime();
+		this.timeUsed = result.getRealTime();
+		this.peakMemory = result.getMemoryPeak();
+		this.syscall = result.getSyscall();
+
+		switch (result.getResultType()) {
+		case ABNORMAL_TERMINATION:
+			this.setStatus(SolutionResult.Result.RUNTIME_ERROR);
+			this.fail(SolutionCheckingStage.RUNTIME,
+					"#errors.abnormalTermination");
+			return this;
+		case INCORRECT_SECURITY_CONFIG:
+			this.setStatus(SolutionResult.Result.INTERNAL_ERROR);
+			this.fail(SolutionCheckingStage.RUNTIME, "#errors.securityConfig");
+			return this;
+		case INTERNAL_ERROR:
+			this.setStatus(SolutionResult.Result.INTERNAL_ERROR);
+			this.fail(SolutionCheckingStage.RUNTIME,
+					result.getDiagnostics() != null ? result.getDiagnostics()
+							: "#errors.internalError", true);
+			return this;
+		case MEMORY_LIMIT:
+			this.setStatus(SolutionResult.Result.MEMORY_LIMIT);
+			this.fail(SolutionCheckingStage.RUNTIME, "#errors.memoryLimit");
+			return this;
+		case OK:
+			this.succeed(SolutionCheckingStage.RUNTIME);
+			return this;
+		case OUTPUT_LIMIT:
+			this.setStatus(SolutionResult.Result.OUTPUT_LIMIT);
+			this.fail(SolutionCheckingStage.RUNTIME, "#errors.outputLimit");
+			return this;
+		case RUNTIME_ERROR:
+			this.setStatus(SolutionResult.Result.RUNTIME_ERROR);
+			this.fail(SolutionCheckingStage.RUNTIME, "#errors.runtimeError");
+			return this;
+		case SECURITY_VIOLATION:
+			this.setStatus(SolutionResult.Result.SECURITY_VIOLATION);
+			this.fail(SolutionCheckingStage.RUNTIME,
+					"#errors.securityViolation");
+			return this;
+		case TIME_LIMIT:
+			this.setStatus(SolutionResult.Result.TIME_LIMIT);
+			this.fail(SolutionCheckingStage.RUNTIME, "#errors.timeLimit");
+			return this;
+		}
+		return this;
+	}
+
 	public SolutionResultBuilder checkingStage(
 			final ExceptionalProducer<AnswerCheckResult> lambda) {
 		if (this.failed) {
 			return this;
 		}
 		try {
-			this.checkingResult = lambda.run();
-			switch (this.checkingResult.getCheckingResultType()) {
-			case OK:
-				this.setStatus(SolutionResult.Result.OK);
-				this.succeed(SolutionCheckingStage.ANSWER);
-				return this;
-			case PRESENTATION_ERROR:
-				this.setStatus(SolutionResult.Result.PRESENTATION_ERROR);
-				this.fail(SolutionCheckingStage.ANSWER,
-						"#answers.presentationError");
-				return this;
-			case WRONG_ANSWER:
-				this.setStatus(SolutionResult.Result.WRONG_ANSWER);
-				this.fail(SolutionCheckingStage.ANSWER, "#answers.wrongAnswer");
-				return this;
-			}
+			return this.applyCheckingResult(lambda.run());
 		} catch (final Exception e) {
-			SolutionResultBuilder.logger.error("Internal error: {}", e);
-			this.setStatus(SolutionResult.Result.INTERNAL_ERROR);
-			this.fail(SolutionCheckingStage.ANSWER, Exceptions.toString(e));
-			return this;
+			return this.failChecking(e);
 		}
-		return this;
+	}
+
+	public CompletableFuture<SolutionResultBuilder> checkingStageAsync(
+			final ExceptionalProducer<CompletableFuture<? extends AnswerCheckResult>> lambda) {
+		if (this.failed) {
+			return CompletableFuture.completedFuture(this);
+		}
+		final CompletableFuture<? extends AnswerCheckResult> future;
+		try {
+			future = lambda.run();
+		} catch (final Exception e) {
+			return CompletableFuture.completedFuture(this.failChecking(e));
+		}
+		return future.handle((result, throwable) -> {
+			if (throwable != null) {
+				return this.failChecking(throwable);
+			}
+			return this.applyCheckingResult(result);
+		});
 	}
 
 	public SolutionResultBuilder compileStage(
@@ -195,6 +268,11 @@ public class SolutionResultBuilder implements Serializable {
 				this.fail(SolutionCheckingStage.COMPILATION, result.getError()
 						.getErrors());
 				return this;
+			case LIMIT_EXCEEDED:
+				this.setStatus(SolutionResult.Result.COMPILATION_LIMIT);
+				this.fail(SolutionCheckingStage.COMPILATION, result.getError()
+						.getErrors());
+				return this;
 			case INTERNAL_ERROR:
 				this.setStatus(SolutionResult.Result.INTERNAL_ERROR);
 				this.fail(SolutionCheckingStage.COMPILATION, "#errors.unknown");
@@ -213,6 +291,13 @@ public class SolutionResultBuilder implements Serializable {
 		return this;
 	}
 
+	private SolutionResultBuilder failChecking(final Throwable t) {
+		SolutionResultBuilder.logger.error("Internal error: {}", t);
+		this.setStatus(SolutionResult.Result.INTERNAL_ERROR);
+		this.fail(SolutionCheckingStage.ANSWER, Exceptions.toString(t));
+		return this;
+	}
+
 	public SolutionResultBuilder fail(
 			final SolutionCheckingStage checkingStage, final String errorMessage) {
 		SolutionResultBuilder.logger.error("Solution failed on stage {}: {}",
@@ -249,57 +334,35 @@ public class SolutionResultBuilder implements Serializable {
 			return this;
 		}
 		try {
-			final ExecutionResult result = lambda.run();
-			this.cpuTime = result.getCpuTime();
-			this.timeUsed = result.getRealTime();
-			this.peakMemory = result.getMemoryPeak();
-			this.syscall = result.getSyscall();
-
-			switch (result.getResultType()) {
-			case ABNORMAL_TERMINATION:
-				this.setStatus(SolutionResult.Result.RUNTIME_ERROR);
-				this.fail(SolutionCheckingStage.RUNTIME,
-						"#errors.abnormalTermination");
-				return this;
-			case INCORRECT_SECURITY_CONFIG:
-				this.setStatus(SolutionResult.Result.INTERNAL_ERROR);
-				this.fail(SolutionCheckingStage.RUNTIME,
-						"#errors.securityConfig");
-				return this;
-			case INTERNAL_ERROR:
-				this.setStatus(SolutionResult.Result.INTERNAL_ERROR);
-				this.fail(SolutionCheckingStage.RUNTIME,
-						"#errors.internalError", true);
-				return this;
-			case MEMORY_LIMIT:
-				this.setStatus(SolutionResult.Result.MEMORY_LIMIT);
-				this.fail(SolutionCheckingStage.RUNTIME, "#errors.memoryLimit");
-				return this;
-			case OK:
-				this.succeed(SolutionCheckingStage.RUNTIME);
-				return this;
-			case OUTPUT_LIMIT:
-				this.setStatus(SolutionResult.Result.OUTPUT_LIMIT);
-				this.fail(SolutionCheckingStage.RUNTIME, "#errors.outputLimit");
-				return this;
-			case RUNTIME_ERROR:
-				this.setStatus(SolutionResult.Result.RUNTIME_ERROR);
-				this.fail(SolutionCheckingStage.RUNTIME, "#errors.runtimeError");
-				return this;
-			case SECURITY_VIOLATION:
-				this.setStatus(SolutionResult.Result.SECURITY_VIOLATION);
-				this.fail(SolutionCheckingStage.RUNTIME,
-						"#errors.securityViolation");
-				return this;
-			case TIME_LIMIT:
-				this.setStatus(SolutionResult.Result.TIME_LIMIT);
-				this.fail(SolutionCheckingStage.RUNTIME, "#errors.timeLimit");
-				return this;
-			}
+			return this.applyExecutionResult(lambda.run());
 		} catch (final Throwable t) {
 			throw new RuntimeException(t);
 		}
-		return this;
+	}
+
+	/**
+	 * Like {@link #runtimeStage(ExceptionalProducer)}, but doesn't block while
+	 * the program runs. Failures to run the program complete the returned
+	 * future exceptionally.
+	 */
+	public CompletableFuture<SolutionResultBuilder> runtimeStageAsync(
+			final ExceptionalProducer<CompletableFuture<ExecutionResult>> lambda) {
+		if (this.failed) {
+			return CompletableFuture.completedFuture(this);
+		}
+		final CompletableFuture<SolutionResultBuilder> result = new CompletableFuture<>();
+		try {
+			lambda.run().whenComplete((executionResult, throwable) -> {
+				if (throwable != null) {
+					result.completeExceptionally(throwable);
+				} else {
+					result.complete(this.applyExecutionResult(executionResult));
+				}
+			});
+		} catch (final Throwable t) {
+			result.completeExceptionally(t);
+		}
+		return result;
 	}
 
 	public void setScore(final BigDecimal score) {
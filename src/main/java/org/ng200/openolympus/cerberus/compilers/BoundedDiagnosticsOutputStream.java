@@ -0,0 +1,197 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014-2015 Nick Guletskii
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ng200.openolympus.cerberus.compilers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Captures compiler diagnostics without holding all of them in memory.
+ * Prefixes such as the source file's path are stripped from the start of
+ * each line as the output streams in; after that, only the first and the
+ * last bytes are kept, and the number of bytes dropped in between is
+ * counted.
+ */
+public class BoundedDiagnosticsOutputStream extends OutputStream {
+
+	/**
+	 * The default number of bytes kept, split evenly between head and tail.
+	 */
+	public static final int DEFAULT_LIMIT = Integer.getInteger(
+			"cerberus.compiler.diagnosticsLimit", 64 * 1024);
+
+	private final List<byte[]> prefixes;
+	private final int longestPrefix;
+
+	private final byte[] pending;
+	private int pendingLength = 0;
+	private boolean atLineStart = true;
+
+	private final ByteArrayOutputStream head = new ByteArrayOutputStream();
+	private final int headLimit;
+	private final byte[] tail;
+	private long tailWritten = 0;
+	private long total = 0;
+
+	public BoundedDiagnosticsOutputStream(final List<String> prefixes) {
+		this(prefixes, BoundedDiagnosticsOutputStream.DEFAULT_LIMIT);
+	}
+
+	/**
+	 * @param prefixes
+	 *            strings to remove from the beginning of lines
+	 * @param limit
+	 *            the number of bytes to keep; the first and the last half of
+	 *            the output are kept
+	 */
+	public BoundedDiagnosticsOutputStream(final List<String> prefixes,
+			final int limit) {
+		this.prefixes = prefixes.stream()
+				.map(prefix -> prefix.getBytes(StandardCharsets.UTF_8))
+				.collect(Collectors.toList());
+		this.longestPrefix = this.prefixes.stream()
+				.mapToInt(prefix -> prefix.length).max().orElse(0);
+		this.pending = new byte[this.longestPrefix];
+		this.headLimit = limit / 2;
+		this.tail = new byte[limit - this.headLimit];
+	}
+
+	private void emit(final int b) {
+		this.total++;
+		if (this.head.size() < this.headLimit) {
+			this.head.write(b);
+			return;
+		}
+		if (this.tail.length > 0) {
+			this.tail[(int) (this.tailWritten % this.tail.length)] = (byte) b;
+			this.tailWritten++;
+		}
+	}
+
+	/**
+	 * Decides whether the pending start of a line is one of the prefixes,
+	 * and passes it on if it isn't.
+	 */
+	private void flushPending() {
+		int skip = 0;
+		for (final byte[] prefix : this.prefixes) {
+			if (prefix.length > skip && this.startsWith(prefix)) {
+				skip = prefix.length;
+			}
+		}
+		for (int i = skip; i < this.pendingLength; i++) {
+			this.emit(this.pending[i]);
+		}
+		this.pendingLength = 0;
+		this.atLineStart = false;
+	}
+
+	@Override
+	public void close() {
+		if (this.pendingLength > 0) {
+			this.flushPending();
+		}
+	}
+
+	/**
+	 * @return the number of bytes that were dropped between head and tail
+	 */
+	public long getTruncatedBytes() {
+		return this.total - this.head.size()
+				- Math.min(this.tailWritten, this.tail.length);
+	}
+
+	private boolean startsWith(final byte[] prefix) {
+		if (this.pendingLength < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (this.pending[i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the kept output; a note marks where bytes were dropped
+	 */
+	public String toString(final Charset charset) {
+		this.close();
+		final StringBuilder builder = new StringBuilder(new String(
+				this.head.toByteArray(), charset));
+		final int tailLength = (int) Math.min(this.tailWritten,
+				this.tail.length);
+		final byte[] tailBytes = new byte[tailLength];
+		for (int i = 0; i < tailLength; i++) {
+			tailBytes[i] = this.tail[(int) ((this.tailWritten - tailLength + i) % this.tail.length)];
+		}
+		int start = 0;
+		final long truncated = this.getTruncatedBytes();
+		if (truncated > 0) {
+			// Don't start in the middle of a UTF-8 sequence
+			while (start < tailLength && (tailBytes[start] & 0xC0) == 0x80) {
+				start++;
+			}
+			builder.append("\n[").append(truncated + start)
+					.append(" bytes truncated]\n");
+		}
+		builder.append(new String(tailBytes, start, tailLength - start,
+				charset));
+		return builder.toString();
+	}
+
+	@Override
+	public String toString() {
+		return this.toString(StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public void write(final int b) {
+		if (this.atLineStart) {
+			if (b == '\n') {
+				this.flushPending();
+				this.emit(b);
+				this.atLineStart = true;
+				return;
+			}
+			if (this.pendingLength == this.longestPrefix) {
+				this.flushPending();
+			} else {
+				this.pending[this.pendingLength++] = (byte) b;
+				if (this.pendingLength == this.longestPrefix) {
+					this.flushPending();
+				}
+				return;
+			}
+		}
+		this.emit(b);
+		if (b == '\n') {
+			this.atLineStart = true;
+		}
+	}
+}
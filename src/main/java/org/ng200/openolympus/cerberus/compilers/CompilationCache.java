@@ -0,0 +1,387 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014-2015 Nick Guletskii
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ng200.openolympus.cerberus.compilers;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.ng200.openolympus.FileAccess;
+import org.ng200.openolympus.cerberus.exceptions.CompilationException;
+import org.ng200.openolympus.cerberus.exceptions.CompilationLimitExceeded;
+import org.ng200.openolympus.cerberus.exceptions.CompilerError;
+import org.ng200.openolympus.cerberus.util.ResourceUnits;
+import org.ng200.openolympus.cerberus.util.TemporaryStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Remembers the outcome of compilations, keyed by a SHA-256 hash of the
+ * sources, the compiler's arguments and the compiler's version. Both
+ * programs and compilation errors are cached, so rejudging a contest doesn't
+ * compile any source twice. The least recently used entries are evicted
+ * when the cache outgrows its size limit.
+ */
+public class CompilationCache {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(CompilationCache.class);
+
+	private static final String OUTPUT = "output";
+	private static final String ERROR_MESSAGE = "error.message";
+	private static final String ERRORS = "error.txt";
+	private static final String ERRORS_TRUNCATED = "error.truncated";
+
+	private static CompilationCache defaultCache = null;
+
+	private static CompilationCache graderCache = null;
+
+	/**
+	 * @return the cache configured by the <code>cerberus.compilationCache</code>
+	 *         properties, or null if caching is disabled
+	 */
+	public static synchronized CompilationCache getDefault()
+			throws IOException {
+		if (!Boolean.parseBoolean(System.getProperty(
+				"cerberus.compilationCache", "true"))) {
+			return null;
+		}
+		if (CompilationCache.defaultCache == null) {
+			final String directory = System
+					.getProperty("cerberus.compilationCache.directory");
+			CompilationCache.defaultCache = new CompilationCache(
+					directory != null ? FileSystems.getDefault().getPath(
+							directory) : TemporaryStorage
+							.createTemporaryDirectory("cerberus-compilations"),
+					Long.getLong("cerberus.compilationCache.size",
+							ResourceUnits.mebibytes(1024)));
+		}
+		return CompilationCache.defaultCache;
+	}
+
+	/**
+	 * @return the cache for graders' object files and units, configured by
+	 *         the <code>cerberus.graderCache</code> properties, or null if
+	 *         caching is disabled. Graders are shared by every submission to
+	 *         a problem, so they are kept apart from submissions and can't
+	 *         be evicted by them.
+	 */
+	public static synchronized CompilationCache getGraderCache()
+			throws IOException {
+		if (!Boolean.parseBoolean(System.getProperty("cerberus.graderCache",
+				"true"))) {
+			return null;
+		}
+		if (CompilationCache.graderCache == null) {
+			final String directory = System
+					.getProperty("cerberus.graderCache.directory");
+			CompilationCache.graderCache = new CompilationCache(
+					directory != null ? FileSystems.getDefault().getPath(
+							directory) : TemporaryStorage
+							.createTemporaryDirectory("cerberus-graders"),
+					Long.getLong("cerberus.graderCache.size",
+							ResourceUnits.mebibytes(256)));
+		}
+		return CompilationCache.graderCache;
+	}
+
+	private static void update(final MessageDigest digest, final Path file)
+			throws IOException {
+		if (FileAccess.isDirectory(file)) {
+			// Such as a directory of units: its location doesn't matter
+			final List<Path> children;
+			try (Stream<Path> paths = FileAccess.walkPaths(file)) {
+				children = paths.filter(path -> FileAccess.isFile(path))
+						.sorted().collect(Collectors.toList());
+			}
+			for (final Path child : children) {
+				digest.update(file.relativize(child).toString()
+						.getBytes(StandardCharsets.UTF_8));
+				digest.update((byte) 0);
+				CompilationCache.updateContents(digest, child);
+			}
+			return;
+		}
+		// Compilers care about file names, e.g. javac about public classes
+		digest.update(file.getFileName().toString()
+				.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+		CompilationCache.updateContents(digest, file);
+	}
+
+	private static void updateContents(final MessageDigest digest,
+			final Path file) throws IOException {
+		final byte[] bytes = FileAccess.readAllBytes(file);
+		digest.update(Long.toString(bytes.length).getBytes(
+				StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+		digest.update(bytes);
+	}
+
+	static String toHex(final byte[] bytes) {
+		final StringBuilder builder = new StringBuilder();
+		for (final byte b : bytes) {
+			builder.append(String.format("%02x", b));
+		}
+		return builder.toString();
+	}
+
+	private final Path root;
+
+	private final long maximumSize;
+
+	/**
+	 * Entry sizes in access order, so that the eldest entry is the least
+	 * recently used one.
+	 */
+	private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(
+			16, 0.75f, true);
+
+	private long size = 0;
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final AtomicLong evictions = new AtomicLong();
+
+	public CompilationCache(final Path root, final long maximumSize)
+			throws IOException {
+		this.root = root;
+		this.maximumSize = maximumSize;
+		FileAccess.createDirectories(root);
+		this.loadEntries();
+	}
+
+	/**
+	 * Compiles the sources, or copies the output of an identical compilation
+	 * to the output file.
+	 */
+	public void compile(final Compiler compiler, final List<Path> inputFiles,
+			final Path outputFile, final Map<String, Object> additionalParameters)
+			throws CompilationException, IOException {
+		this.compile(compiler, inputFiles, Collections.emptyList(),
+				outputFile, additionalParameters);
+	}
+
+	/**
+	 * @param dependencies
+	 *            files that the compiler reads without being told to, such as
+	 *            headers. They are part of the key, but aren't passed to the
+	 *            compiler.
+	 */
+	public void compile(final Compiler compiler, final List<Path> inputFiles,
+			final List<Path> dependencies, final Path outputFile,
+			final Map<String, Object> additionalParameters)
+			throws CompilationException, IOException {
+		final String key = this.getKey(compiler, inputFiles, dependencies,
+				additionalParameters);
+		final Path entry = this.root.resolve(key);
+
+		if (this.restore(key, outputFile)) {
+			return;
+		}
+
+		this.misses.incrementAndGet();
+		final Path staging = FileAccess.createTempDirectory(this.root,
+				"staging");
+		try {
+			try {
+				compiler.compile(inputFiles, outputFile, additionalParameters);
+			} catch (final CompilationLimitExceeded e) {
+				// Depends on the load as much as on the sources
+				throw e;
+			} catch (final CompilerError e) {
+				FileAccess.writeUTF8StringToFile(
+						staging.resolve(CompilationCache.ERROR_MESSAGE),
+						e.getMessage());
+				FileAccess.writeUTF8StringToFile(
+						staging.resolve(CompilationCache.ERRORS),
+						e.getErrors() != null ? e.getErrors() : "");
+				FileAccess.writeUTF8StringToFile(
+						staging.resolve(CompilationCache.ERRORS_TRUNCATED),
+						Long.toString(e.getTruncatedBytes()));
+				this.store(key, staging);
+				throw e;
+			}
+			FileAccess.copyDirectory(outputFile,
+					staging.resolve(CompilationCache.OUTPUT),
+					StandardCopyOption.COPY_ATTRIBUTES);
+			this.store(key, staging);
+		} finally {
+			FileAccess.deleteDirectoryByWalking(staging);
+		}
+	}
+
+	public long getEvictions() {
+		return this.evictions.get();
+	}
+
+	public long getHits() {
+		return this.hits.get();
+	}
+
+	private String getKey(final Compiler compiler, final List<Path> inputFiles,
+			final List<Path> dependencies,
+			final Map<String, Object> additionalParameters) throws IOException {
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 isn't available", e);
+		}
+		final StringBuilder header = new StringBuilder();
+		header.append(compiler.getClass().getName()).append('\0');
+		header.append(compiler.getToolchainVersion()).append('\0');
+		compiler.getArguments().forEach(
+				argument -> header.append(argument).append('\0'));
+		header.append(new TreeMap<>(additionalParameters)).append('\0');
+		digest.update(header.toString().getBytes(StandardCharsets.UTF_8));
+		for (final Path file : inputFiles) {
+			CompilationCache.update(digest, file);
+		}
+		if (!dependencies.isEmpty()) {
+			digest.update((byte) 0);
+		}
+		for (final Path file : dependencies) {
+			CompilationCache.update(digest, file);
+		}
+		return CompilationCache.toHex(digest.digest());
+	}
+
+	public long getMisses() {
+		return this.misses.get();
+	}
+
+	/**
+	 * @return the number of bytes the cached entries occupy
+	 */
+	public synchronized long getSize() {
+		return this.size;
+	}
+
+	private void loadEntries() throws IOException {
+		final List<Path> existing = FileAccess.actOnChildren(
+				this.root,
+				children -> children.filter(
+						child -> child.getFileName().toString().length() == 64)
+						.collect(Collectors.toList()));
+		existing.sort(Comparator.comparing(entry -> {
+			try {
+				return FileAccess.readAttributes(entry).lastModifiedTime();
+			} catch (final IOException e) {
+				return FileTime.fromMillis(0);
+			}
+		}));
+		for (final Path entry : existing) {
+			final long entrySize = CompilationCache.sizeOf(entry);
+			this.entries.put(entry.getFileName().toString(), entrySize);
+			this.size += entrySize;
+		}
+		this.evict();
+	}
+
+	private static long sizeOf(final Path path) throws IOException {
+		try (Stream<Path> files = FileAccess.walkPaths(path)) {
+			long total = 0;
+			for (final Path file : files.collect(Collectors.toList())) {
+				total += FileAccess.readAttributes(file).size();
+			}
+			return total;
+		}
+	}
+
+	private synchronized void evict() throws IOException {
+		final Iterator<Map.Entry<String, Long>> iterator = this.entries
+				.entrySet().iterator();
+		while (this.size > this.maximumSize && iterator.hasNext()) {
+			final Map.Entry<String, Long> eldest = iterator.next();
+			iterator.remove();
+			this.size -= eldest.getValue();
+			this.evictions.incrementAndGet();
+			FileAccess.deleteDirectoryByWalking(this.root.resolve(eldest
+					.getKey()));
+		}
+	}
+
+	private synchronized void store(final String key, final Path staging)
+			throws IOException {
+		if (this.entries.containsKey(key)) {
+			// Another judge has compiled the same sources meanwhile
+			return;
+		}
+		final Path entry = this.root.resolve(key);
+		FileAccess.deleteDirectoryByWalking(entry);
+		FileAccess.move(staging, entry);
+		final long entrySize = CompilationCache.sizeOf(entry);
+		this.entries.put(key, entrySize);
+		this.size += entrySize;
+		this.evict();
+	}
+
+	/**
+	 * Copies a cached output to the output file, or rethrows a cached error,
+	 * and marks the entry as recently used.
+	 *
+	 * @return false if there is no such entry
+	 */
+	private synchronized boolean restore(final String key,
+			final Path outputFile) throws CompilerError, IOException {
+		if (this.entries.get(key) == null) {
+			return false;
+		}
+		CompilationCache.logger.debug("Compilation cache hit: {}", key);
+		this.hits.incrementAndGet();
+
+		final Path entry = this.root.resolve(key);
+		FileAccess.setLastModifiedTime(entry,
+				FileTime.fromMillis(System.currentTimeMillis()));
+		if (FileAccess.exists(entry.resolve(CompilationCache.ERRORS))) {
+			throw new CompilerError(FileAccess.readUTF8String(entry
+					.resolve(CompilationCache.ERROR_MESSAGE)),
+					FileAccess.readUTF8String(entry
+							.resolve(CompilationCache.ERRORS)),
+					Long.parseLong(FileAccess.readUTF8String(entry
+							.resolve(CompilationCache.ERRORS_TRUNCATED))));
+		}
+		FileAccess.copyDirectory(entry.resolve(CompilationCache.OUTPUT),
+				outputFile, StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.COPY_ATTRIBUTES);
+		return true;
+	}
+}
@@ -0,0 +1,268 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014-2015 Nick Guletskii
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ng200.openolympus.cerberus.compilers;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.ng200.openolympus.FileAccess;
+import org.ng200.openolympus.cerberus.ExecutionResult;
+import org.ng200.openolympus.cerberus.exceptions.CompilationException;
+import org.ng200.openolympus.cerberus.exceptions.CompilationLimitExceeded;
+import org.ng200.openolympus.cerberus.executors.HostExecutor;
+import org.ng200.openolympus.cerberus.util.ResourceUnits;
+import org.ng200.openolympus.cerberus.util.TemporaryStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs compilers through a {@link HostExecutor}, so that compile bombs are
+ * stopped by CPU time, wall time, memory and output size limits instead of
+ * starving the solutions that are being judged on the same machine.
+ *
+ * Limits are read from the cerberus.compilation.cpuLimit,
+ * cerberus.compilation.timeLimit, cerberus.compilation.memoryLimit and
+ * cerberus.compilation.outputLimit system properties. Appending the source
+ * file's extension, e.g. cerberus.compilation.memoryLimit.cpp, overrides a
+ * limit for one language. A limit of 0 disables it.
+ */
+public class CompilationSandbox {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(CompilationSandbox.class);
+
+	/**
+	 * How compilers report failed allocations: the memory limit is enforced
+	 * through the address space, so they fail gracefully instead of being
+	 * killed.
+	 */
+	private static final Pattern OUT_OF_MEMORY = Pattern
+			.compile("out of memory|memory exhausted|OutOfMemoryError|Cannot allocate memory");
+
+	private static final Set<PosixFilePermission> SHARED_PERMISSIONS = PosixFilePermissions
+			.fromString("rwxrwxrwx");
+
+	private static Path workingDirectoryRoot = null;
+
+	/**
+	 * @param language
+	 *            the extension of the source file, e.g. "cpp"
+	 * @param namespaces
+	 *            whether to use the namespace runner instead of
+	 *            olympus_watchdog
+	 */
+	public static CompilationSandbox forLanguage(final String language,
+			final boolean namespaces) {
+		final CompilationSandbox sandbox = new CompilationSandbox(namespaces);
+		sandbox.setCpuLimit(CompilationSandbox.getLimit("cpuLimit", language,
+				ResourceUnits.seconds(20)));
+		sandbox.setTimeLimit(CompilationSandbox.getLimit("timeLimit",
+				language, ResourceUnits.seconds(20)));
+		// The JVM reserves far more address space than it uses
+		sandbox.setMemoryLimit(CompilationSandbox.getLimit("memoryLimit",
+				language, "java".equals(language) ? 0 : ResourceUnits
+						.mebibytes(1024)));
+		sandbox.setOutputLimit(CompilationSandbox.getLimit("outputLimit",
+				language, ResourceUnits.mebibytes(256)));
+		return sandbox;
+	}
+
+	private static long getLimit(final String name, final String language,
+			final long defaultValue) {
+		return Long.getLong("cerberus.compilation." + name + "." + language,
+				Long.getLong("cerberus.compilation." + name, defaultValue));
+	}
+
+	private static synchronized Path getWorkingDirectoryRoot()
+			throws IOException {
+		if (CompilationSandbox.workingDirectoryRoot == null) {
+			CompilationSandbox.workingDirectoryRoot = TemporaryStorage
+					.createTemporaryDirectory("cerberus-compilation");
+		}
+		return CompilationSandbox.workingDirectoryRoot;
+	}
+
+	private final boolean namespaces;
+	private long cpuLimit = 0;
+	private long timeLimit = 0;
+	private long memoryLimit = 0;
+	private long outputLimit = 0;
+
+	public CompilationSandbox(final boolean namespaces) {
+		this.namespaces = namespaces;
+	}
+
+	/**
+	 * Lets the compiler write to the directory. The namespace runner maps
+	 * the compiler to the current user, but olympus_watchdog runs it as a
+	 * sandbox user.
+	 */
+	public void allowWrites(final Path directory) throws IOException {
+		if (!this.namespaces) {
+			Files.setPosixFilePermissions(directory,
+					CompilationSandbox.SHARED_PERMISSIONS);
+		}
+	}
+
+	private String describe(final ExecutionResult.ExecutionResultType limit) {
+		switch (limit) {
+		case TIME_LIMIT:
+			return "Compilation exceeded the time limit of "
+					+ Math.max(this.cpuLimit, this.timeLimit) + " ms.";
+		case MEMORY_LIMIT:
+			return "Compilation exceeded the memory limit of "
+					+ this.memoryLimit + " bytes.";
+		default:
+			return "Compilation exceeded the output limit of "
+					+ this.outputLimit + " bytes.";
+		}
+	}
+
+	/**
+	 * Runs a compiler's command line in the sandbox.
+	 *
+	 * @param diagnostics
+	 *            receives the stream the compiler reports errors on
+	 * @param diagnosticsOnOutput
+	 *            true if the compiler reports errors on standard output
+	 * @return true if the compiler succeeded, false if it has reported
+	 *         errors
+	 * @throws CompilationLimitExceeded
+	 *             if the compiler has exceeded a limit
+	 */
+	public boolean execute(final List<String> command,
+			final BoundedDiagnosticsOutputStream diagnostics,
+			final boolean diagnosticsOnOutput) throws CompilationException,
+			IOException {
+		final Path workingDirectory = FileAccess.createTempDirectory(
+				CompilationSandbox.getWorkingDirectoryRoot(), "run");
+		final ExecutionResult result;
+		try (HostExecutor executor = new HostExecutor(workingDirectory,
+				this.namespaces)) {
+			executor.setArguments(command.subList(1, command.size()))
+					.setCpuLimit(this.cpuLimit).setTimeLimit(this.timeLimit)
+					.setMemoryLimit(this.memoryLimit)
+					.setDiskLimit(this.outputLimit);
+			if (diagnosticsOnOutput) {
+				executor.setOutputStream(diagnostics);
+			} else {
+				executor.setErrorStream(diagnostics);
+			}
+			result = executor.execute(this.resolve(command.get(0)));
+		} finally {
+			FileAccess.deleteDirectoryByWalking(workingDirectory);
+		}
+		CompilationSandbox.logger.debug("Compiler finished: {} in {} ms",
+				result.getResultType(), result.getRealTime());
+
+		ExecutionResult.ExecutionResultType type = result.getResultType();
+		if (type == ExecutionResult.ExecutionResultType.RUNTIME_ERROR
+				&& this.memoryLimit > 0
+				&& CompilationSandbox.OUT_OF_MEMORY.matcher(
+						diagnostics.toString(StandardCharsets.UTF_8)).find()) {
+			type = ExecutionResult.ExecutionResultType.MEMORY_LIMIT;
+		}
+		switch (type) {
+		case OK:
+			return true;
+		case RUNTIME_ERROR:
+			return false;
+		case TIME_LIMIT:
+		case MEMORY_LIMIT:
+		case OUTPUT_LIMIT:
+			throw new CompilationLimitExceeded("compilation."
+					+ type.name().toLowerCase(), this.describe(type) + "\n"
+					+ diagnostics.toString(StandardCharsets.UTF_8),
+					diagnostics.getTruncatedBytes(), type);
+		default:
+			throw new CompilationException("The compiler couldn't be run: "
+					+ type
+					+ (result.getDiagnostics() != null ? ": "
+							+ result.getDiagnostics() : ""));
+		}
+	}
+
+	public long getCpuLimit() {
+		return this.cpuLimit;
+	}
+
+	public long getMemoryLimit() {
+		return this.memoryLimit;
+	}
+
+	public long getOutputLimit() {
+		return this.outputLimit;
+	}
+
+	public long getTimeLimit() {
+		return this.timeLimit;
+	}
+
+	public boolean isNamespaces() {
+		return this.namespaces;
+	}
+
+	/**
+	 * The runners execute the program directly, without searching PATH.
+	 */
+	private Path resolve(final String program) throws IOException {
+		if (program.indexOf('/') >= 0) {
+			return FileSystems.getDefault().getPath(program);
+		}
+		final String path = System.getenv("PATH");
+		if (path != null) {
+			for (final String directory : path.split(":")) {
+				final Path candidate = FileSystems.getDefault().getPath(
+						directory.isEmpty() ? "." : directory, program);
+				if (FileAccess.isExecutable(candidate)) {
+					return candidate.toAbsolutePath();
+				}
+			}
+		}
+		throw new IOException("Couldn't find " + program + " on the PATH");
+	}
+
+	public void setCpuLimit(long cpuLimit) {
+		this.cpuLimit = cpuLimit;
+	}
+
+	public void setMemoryLimit(long memoryLimit) {
+		this.memoryLimit = memoryLimit;
+	}
+
+	public void setOutputLimit(long outputLimit) {
+		this.outputLimit = outputLimit;
+	}
+
+	public void setTimeLimit(long timeLimit) {
+		this.timeLimit = timeLimit;
+	}
+}
@@ -0,0 +1,214 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014-2015 Nick Guletskii
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ng200.openolympus.cerberus.compilers;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs compilations on a bounded number of threads. Each language has its
+ * own concurrency cap, so that a burst of heavy C++ compilations can't
+ * starve lighter ones, and queued compilations start in order of priority.
+ * When the queue is full, new compilations are rejected instead of piling
+ * up.
+ */
+public class CompilationScheduler {
+
+	private static class Task implements Runnable {
+		private final String language;
+		private final int priority;
+		private final long sequence;
+		private final Callable<?> callable;
+		private final CompletableFuture<Object> future = new CompletableFuture<>();
+
+		public Task(final String language, final int priority,
+				final long sequence, final Callable<?> callable) {
+			this.language = language;
+			this.priority = priority;
+			this.sequence = sequence;
+			this.callable = callable;
+		}
+
+		@Override
+		public void run() {
+			try {
+				this.future.complete(this.callable.call());
+			} catch (final Throwable e) {
+				this.future.completeExceptionally(e);
+			}
+		}
+	}
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(CompilationScheduler.class);
+
+	private static CompilationScheduler defaultScheduler = null;
+
+	/**
+	 * Creates the scheduler configured by the
+	 * <code>cerberus.compilation</code> properties. By default, half of the
+	 * processors compile, and C++ and Java may only take half of those.
+	 */
+	public static synchronized CompilationScheduler getDefault() {
+		if (CompilationScheduler.defaultScheduler == null) {
+			final int threads = Integer.getInteger(
+					"cerberus.compilation.threads", Math.max(1, Runtime
+							.getRuntime().availableProcessors() / 2));
+			final Map<String, Integer> limits = new HashMap<>();
+			for (final String language : new String[] {
+					"cpp", "java", "pas"
+			}) {
+				limits.put(language, Integer.getInteger(
+						"cerberus.compilation.limit." + language,
+						language.equals("pas") ? threads : Math.max(1,
+								threads / 2)));
+			}
+			CompilationScheduler.defaultScheduler = new CompilationScheduler(
+					threads, Integer.getInteger("cerberus.compilation.queue",
+							256), limits);
+			CompilationScheduler.logger.info(
+					"Compiling on {} threads, limits: {}", threads, limits);
+		}
+		return CompilationScheduler.defaultScheduler;
+	}
+
+	private final int threads;
+
+	private final int queueCapacity;
+
+	private final Map<String, Integer> limits;
+
+	private final Map<String, Integer> running = new HashMap<>();
+
+	private int runningTotal = 0;
+
+	private long sequence = 0;
+
+	private final TreeSet<Task> queue = new TreeSet<>(Comparator
+			.comparingInt((final Task task) -> -task.priority).thenComparingLong(
+					task -> task.sequence));
+
+	private final ExecutorService workers = Executors
+			.newCachedThreadPool(new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+
+				@Override
+				public Thread newThread(final Runnable runnable) {
+					final Thread thread = new Thread(runnable,
+							"cerberus-compiler-" + this.count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	/**
+	 * @param limits
+	 *            concurrency caps per language; languages that aren't listed
+	 *            may use all threads
+	 */
+	public CompilationScheduler(final int threads, final int queueCapacity,
+			final Map<String, Integer> limits) {
+		this.threads = threads;
+		this.queueCapacity = queueCapacity;
+		this.limits = new HashMap<>(limits);
+	}
+
+	private synchronized void dispatch() {
+		final Iterator<Task> iterator = this.queue.iterator();
+		while (this.runningTotal < this.threads && iterator.hasNext()) {
+			final Task task = iterator.next();
+			final int runningForLanguage = this.running.getOrDefault(
+					task.language, 0);
+			if (runningForLanguage >= this.limits.getOrDefault(task.language,
+					this.threads)) {
+				continue;
+			}
+			iterator.remove();
+			this.running.put(task.language, runningForLanguage + 1);
+			this.runningTotal++;
+			this.workers.execute(() -> {
+				try {
+					task.run();
+				} finally {
+					this.finished(task);
+				}
+			});
+		}
+	}
+
+	private synchronized void finished(final Task task) {
+		this.running.merge(task.language, -1, Integer::sum);
+		this.runningTotal--;
+		this.dispatch();
+	}
+
+	public synchronized int getQueued() {
+		return this.queue.size();
+	}
+
+	public synchronized int getRunning() {
+		return this.runningTotal;
+	}
+
+	/**
+	 * Queues a compilation.
+	 *
+	 * @param language
+	 *            the language whose concurrency cap applies, e.g. "cpp"
+	 * @param priority
+	 *            compilations with higher priorities start first
+	 * @return a future that completes with the compilation's result, or
+	 *         exceptionally with a {@link RejectedExecutionException} if the
+	 *         queue is full
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> CompletableFuture<T> submit(final String language,
+			final int priority, final Callable<T> compilation) {
+		final Task task;
+		synchronized (this) {
+			if (this.queue.size() >= this.queueCapacity) {
+				final CompletableFuture<T> rejected = new CompletableFuture<>();
+				rejected.completeExceptionally(new RejectedExecutionException(
+						"The compilation queue is full"));
+				return rejected;
+			}
+			task = new Task(language, priority, this.sequence++, compilation);
+			this.queue.add(task);
+			this.dispatch();
+		}
+		return (CompletableFuture<T>) task.future;
+	}
+}
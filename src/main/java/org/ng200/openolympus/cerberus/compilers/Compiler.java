@@ -41,4 +41,12 @@ public interface Compiler {
 	public void compile(List<Path> inputFiles, Path outputFile,
 			Map<String, Object> additionalParameters)
 			throws CompilationException, IOException;
+
+	public List<String> getArguments();
+
+	/**
+	 * @return a string that changes whenever the compiler may produce
+	 *         different output for the same input
+	 */
+	public String getToolchainVersion() throws IOException;
 }
@@ -22,23 +22,18 @@
  */
 package org.ng200.openolympus.cerberus.compilers;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
-import org.apache.commons.exec.CommandLine;
-import org.apache.commons.exec.DefaultExecutor;
-import org.apache.commons.exec.ExecuteWatchdog;
-import org.apache.commons.exec.PumpStreamHandler;
+import org.ng200.openolympus.FileAccess;
 import org.ng200.openolympus.cerberus.exceptions.CompilationException;
 import org.ng200.openolympus.cerberus.exceptions.CompilerError;
+import org.ng200.openolympus.cerberus.util.Lists;
+import org.ng200.openolympus.cerberus.util.ProcessLauncher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,6 +41,7 @@ public class FPCCompiler implements Compiler {
 	private static final Logger logger = LoggerFactory
 			.getLogger(FPCCompiler.class);
 	private List<String> arguments = new ArrayList<>();
+	private CompilationSandbox sandbox = null;
 
 	public FPCCompiler() {
 	}
@@ -55,14 +51,47 @@ public class FPCCompiler implements Compiler {
 		this.arguments.add(argument);
 	}
 
+	@Override
+	public String getToolchainVersion() throws IOException {
+		return ToolchainVersion.of("ppcx64", "-iV");
+	}
+
+	/**
+	 * Links units and libraries into the program, so that it runs in a jail
+	 * without shared libraries.
+	 */
+	public void linkStatically() {
+		this.addArgument("-XS");
+		this.addArgument("-Xt");
+	}
+
 	public void setArguments(List<String> arguments) {
 		this.arguments = arguments;
 	}
 
+	public CompilationSandbox getSandbox() {
+		return this.sandbox;
+	}
+
+	/**
+	 * @param sandbox
+	 *            the sandbox to run the compiler in, or null to run it
+	 *            directly
+	 */
+	public void setSandbox(CompilationSandbox sandbox) {
+		this.sandbox = sandbox;
+	}
+
+	@Override
 	public List<String> getArguments() {
 		return arguments;
 	}
 
+	/**
+	 * Directories among the input files are searched for units. If the
+	 * output file is a directory, the sources are units that are compiled
+	 * into it one by one, so later units may use earlier ones.
+	 */
 	@Override
 	public void compile(final List<Path> inputFiles, final Path outputFile,
 			final Map<String, Object> additionalParameters)
@@ -70,38 +99,65 @@ public class FPCCompiler implements Compiler {
 		FPCCompiler.logger.debug("Compiling {} to {} using FPC", inputFiles,
 				outputFile);
 
-		final CommandLine commandLine = new CommandLine("ppcx64");
-		commandLine.setSubstitutionMap(additionalParameters);
+		final List<Path> sources = new ArrayList<>();
+		final List<String> unitPaths = new ArrayList<>();
+		inputFiles.forEach(file -> {
+			if (FileAccess.isDirectory(file)) {
+				unitPaths.add("-Fu" + file.toAbsolutePath().toString());
+			} else {
+				sources.add(file);
+			}
+		});
 
-		this.arguments.forEach((arg) -> commandLine.addArgument(arg));
+		if (FileAccess.isDirectory(outputFile)) {
+			unitPaths.add("-Fu" + outputFile.toAbsolutePath().toString());
+			for (final Path unit : sources) {
+				this.compile(unit, unitPaths, "-FU"
+						+ outputFile.toAbsolutePath().toString(), outputFile,
+						additionalParameters);
+			}
+			return;
+		}
+		if (sources.size() != 1) {
+			throw new CompilationException(
+					"FPC compiles one program at a time, units must be precompiled");
+		}
+		this.compile(sources.get(0), unitPaths, "-o"
+				+ outputFile.toAbsolutePath().toString(), outputFile
+				.toAbsolutePath().getParent(), additionalParameters);
+	}
 
-		commandLine.addArgument("-o" + outputFile.toAbsolutePath().toString()); // Set
-		// outuput
-		// file
-		commandLine.addArgument("-l-");
-		commandLine.addArgument("-v0");
-		inputFiles.forEach((file) -> commandLine.addArguments(MessageFormat
-				.format("\"{0}\"", file.toAbsolutePath().toString()))); // Add
-		// input
-		// files
+	private void compile(final Path source, final List<String> unitPaths,
+			final String output, final Path outputDirectory,
+			final Map<String, Object> additionalParameters)
+			throws CompilationException {
+		final List<String> command = new ArrayList<>();
+		command.add("ppcx64");
 
-		FPCCompiler.logger.debug("Running FPC with arguments: {}",
-				commandLine.toString());
+		this.arguments.forEach((arg) -> command.add(ProcessLauncher
+				.substitute(arg, additionalParameters)));
 
-		final DefaultExecutor executor = new DefaultExecutor();
-		executor.setExitValues(new int[] {
-				0,
-				1
-		});
+		command.addAll(unitPaths);
+		command.add(output);
+		command.add("-l-");
+		command.add("-v0");
+		command.add(source.toAbsolutePath().toString());
 
-		final ByteArrayOutputStream errorStream = new ByteArrayOutputStream();
-		executor.setStreamHandler(new PumpStreamHandler(errorStream, null, null));
+		FPCCompiler.logger.debug("Running FPC with arguments: {}", command);
 
-		executor.setWatchdog(new ExecuteWatchdog(20000));// 20 seconds to
-		// compile
+		final BoundedDiagnosticsOutputStream errorStream = new BoundedDiagnosticsOutputStream(
+				Lists.from(source.getFileName().toString()));
 		int result;
 		try {
-			result = executor.execute(commandLine);
+			if (this.sandbox != null) {
+				this.sandbox.allowWrites(outputDirectory);
+				result = this.sandbox.execute(command, errorStream, true) ? 0
+						: 1;
+			} else {
+				result = new ProcessLauncher(command).setExitValues(0, 1)
+						.setOutputStream(errorStream).setTimeout(20000) // 20 seconds
+						.execute();
+			}
 		} catch (final IOException e) {
 			FPCCompiler.logger.error("Could not execute FPC: {}", e);
 			throw new CompilationException("Could not execute FPC", e);
@@ -110,29 +166,11 @@ public class FPCCompiler implements Compiler {
 		case 0:
 			return;
 		case 1:
-			try {
-				final String errorString = errorStream.toString("UTF-8");
-
-				final Pattern pattern = Pattern
-						.compile(
-								"^("
-										+ inputFiles
-												.stream()
-												.map(file -> Pattern.quote(file
-														.getFileName()
-														.toString()))
-												.collect(
-														Collectors.joining("|"))
-										+ ")", Pattern.MULTILINE);
-
-				FPCCompiler.logger.debug("Compilation error: {}", errorString);
-
-				throw new CompilerError("fpc.wrote.stdout", errorString);
-			} catch (final UnsupportedEncodingException e) {
-				throw new CompilationException(
-						"Unsupported encoding! The compiler should output UTF-8!",
-						e);
-			}
+			final String errorString = errorStream
+					.toString(StandardCharsets.UTF_8);
+			FPCCompiler.logger.debug("Compilation error: {}", errorString);
+			throw new CompilerError("fpc.wrote.stdout", errorString,
+					errorStream.getTruncatedBytes());
 		}
 	}
 }
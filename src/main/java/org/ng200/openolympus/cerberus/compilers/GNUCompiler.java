@@ -22,25 +22,17 @@
  */
 package org.ng200.openolympus.cerberus.compilers;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.text.MessageFormat;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
-import org.apache.commons.exec.CommandLine;
-import org.apache.commons.exec.DefaultExecutor;
-import org.apache.commons.exec.ExecuteWatchdog;
-import org.apache.commons.exec.PumpStreamHandler;
 import org.ng200.openolympus.cerberus.exceptions.CompilationException;
 import org.ng200.openolympus.cerberus.exceptions.CompilerError;
+import org.ng200.openolympus.cerberus.util.ProcessLauncher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,6 +40,7 @@ public class GNUCompiler implements Compiler {
 	private static final Logger logger = LoggerFactory
 			.getLogger(GNUCompiler.class);
 	private List<String> arguments = new ArrayList<>();
+	private CompilationSandbox sandbox = null;
 
 	public GNUCompiler() {
 	}
@@ -57,14 +50,41 @@ public class GNUCompiler implements Compiler {
 		this.arguments.add(argument);
 	}
 
+	@Override
 	public List<String> getArguments() {
 		return arguments;
 	}
 
+	@Override
+	public String getToolchainVersion() throws IOException {
+		return ToolchainVersion.of("g++", "--version");
+	}
+
+	/**
+	 * Links the C++ runtime into the program, so that it runs in a jail
+	 * without shared libraries.
+	 */
+	public void linkStatically() {
+		this.addArgument("-static");
+	}
+
 	public void setArguments(List<String> arguments) {
 		this.arguments = arguments;
 	}
 
+	public CompilationSandbox getSandbox() {
+		return this.sandbox;
+	}
+
+	/**
+	 * @param sandbox
+	 *            the sandbox to run the compiler in, or null to run it
+	 *            directly
+	 */
+	public void setSandbox(CompilationSandbox sandbox) {
+		this.sandbox = sandbox;
+	}
+
 	@Override
 	public void compile(final List<Path> inputFiles, final Path outputFile,
 			final Map<String, Object> additionalParameters)
@@ -72,40 +92,53 @@ public class GNUCompiler implements Compiler {
 		GNUCompiler.logger.debug("Compiling {} to {} using GCC", inputFiles,
 				outputFile);
 
-		final CommandLine commandLine = new CommandLine("g++");
-		commandLine.setSubstitutionMap(additionalParameters);
-
-		this.arguments.forEach((arg) -> commandLine.addArgument(arg));
+		final List<String> command = new ArrayList<>();
+		command.add("g++");
 
-		commandLine.addArgument("-w"); // Prohibit warnings because they screw
+		final List<String> arguments = new ArrayList<>();
+		this.arguments.forEach((arg) -> arguments.add(ProcessLauncher
+				.substitute(arg, additionalParameters)));
+		arguments.add("-w"); // Prohibit warnings because they screw
 		// up error detection
+		command.addAll(arguments);
 
-		commandLine.addArgument("-o");
-		commandLine.addArgument(MessageFormat.format("\"{0}\"", outputFile
-				.toAbsolutePath().toString())); // Set outuput file
-
-		inputFiles.forEach((file) -> commandLine.addArguments(MessageFormat
-				.format("\"{0}\"", file.toAbsolutePath().toString()))); // Add
-		// input
-		// files
+		try {
+			final PrecompiledHeaders precompiledHeaders = PrecompiledHeaders
+					.getDefault();
+			final Path includeDirectory = precompiledHeaders != null ? precompiledHeaders
+					.getIncludeDirectory("g++", arguments) : null;
+			if (includeDirectory != null) {
+				command.add("-I" + includeDirectory.toAbsolutePath());
+			}
+		} catch (final IOException e) {
+			GNUCompiler.logger.warn(
+					"Couldn't use precompiled headers: {}", e);
+		}
 
-		GNUCompiler.logger.debug("Running GCC with arguments: {}",
-				Arrays.asList(commandLine.getArguments()));
+		command.add("-o");
+		command.add(outputFile.toAbsolutePath().toString()); // Set outuput
+		// file
 
-		final DefaultExecutor executor = new DefaultExecutor();
-		executor.setExitValues(new int[] {
-				0,
-				1
-		});
+		inputFiles.forEach((file) -> command.add(file.toAbsolutePath()
+				.toString())); // Add input files
 
-		final ByteArrayOutputStream errorStream = new ByteArrayOutputStream();
-		executor.setStreamHandler(new PumpStreamHandler(null, errorStream, null));
+		GNUCompiler.logger.debug("Running GCC with arguments: {}", command);
 
-		executor.setWatchdog(new ExecuteWatchdog(20000));// 20 seconds to
-		// compile
+		final BoundedDiagnosticsOutputStream errorStream = new BoundedDiagnosticsOutputStream(
+				inputFiles.stream().map(file -> file.toAbsolutePath().toString() + ":")
+						.collect(Collectors.toList()));
 		int result;
 		try {
-			result = executor.execute(commandLine);
+			if (this.sandbox != null) {
+				this.sandbox.allowWrites(outputFile.toAbsolutePath()
+						.getParent());
+				result = this.sandbox.execute(command, errorStream, false) ? 0
+						: 1;
+			} else {
+				result = new ProcessLauncher(command).setExitValues(0, 1)
+						.setErrorStream(errorStream).setTimeout(20000) // 20 seconds
+						.execute();
+			}
 		} catch (final IOException e) {
 			GNUCompiler.logger.error("Could not execute GCC: {}", e);
 			throw new CompilationException("Could not execute GCC", e);
@@ -115,27 +148,11 @@ public class GNUCompiler implements Compiler {
 		case 0:
 			return;
 		case 1:
-			try {
-				String errorString = errorStream
-						.toString(StandardCharsets.UTF_8.name());
-
-				final Pattern pattern = Pattern.compile(
-						"^("
-								+ inputFiles
-										.stream()
-										.map(file -> Pattern.quote(file
-												.toAbsolutePath().toString()))
-										.collect(Collectors.joining("|"))
-								+ "):", Pattern.MULTILINE);
-				errorString = pattern.matcher(errorString).replaceAll("");
-
-				GNUCompiler.logger.debug("Compilation error: {}", errorString);
-				throw new CompilerError("gcc.wrote.stderr", errorString);
-			} catch (final UnsupportedEncodingException e) {
-				throw new CompilationException(
-						"Unsupported encoding! The compiler should output UTF-8!",
-						e);
-			}
+			final String errorString = errorStream
+					.toString(StandardCharsets.UTF_8);
+			GNUCompiler.logger.debug("Compilation error: {}", errorString);
+			throw new CompilerError("gcc.wrote.stderr", errorString,
+					errorStream.getTruncatedBytes());
 		}
 	}
 }
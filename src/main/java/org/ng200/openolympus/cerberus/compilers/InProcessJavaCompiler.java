@@ -0,0 +1,320 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014-2015 Nick Guletskii
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ng200.openolympus.cerberus.compilers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.ng200.openolympus.FileAccess;
+import org.ng200.openolympus.cerberus.exceptions.CompilationException;
+import org.ng200.openolympus.cerberus.exceptions.CompilerError;
+import org.ng200.openolympus.cerberus.executors.JavaRuntime;
+import org.ng200.openolympus.cerberus.util.ProcessLauncher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compiles Java sources with the JDK's compiler inside the judge's JVM,
+ * which is already warm, instead of starting a javac process. Sources are
+ * read into memory and classes are only written to the output directory
+ * once compilation has succeeded. Annotation processing is disabled, so no
+ * code from the submission runs in the judge.
+ */
+public class InProcessJavaCompiler implements Compiler {
+
+	private static class MemoryFileManager extends
+			ForwardingJavaFileManager<StandardJavaFileManager> {
+		private final Map<String, ByteArrayOutputStream> classes;
+
+		public MemoryFileManager(final StandardJavaFileManager fileManager,
+				final Map<String, ByteArrayOutputStream> classes) {
+			super(fileManager);
+			this.classes = classes;
+		}
+
+		/**
+		 * Keeps the shared standard file manager open.
+		 */
+		@Override
+		public void close() throws IOException {
+			this.flush();
+		}
+
+		/**
+		 * Every compilation gets its own empty class loader, so nothing can
+		 * be loaded from the judge's class path.
+		 */
+		@Override
+		public ClassLoader getClassLoader(final Location location) {
+			return new URLClassLoader(new URL[0], null);
+		}
+
+		@Override
+		public JavaFileObject getJavaFileForOutput(final Location location,
+				final String className, final JavaFileObject.Kind kind,
+				final FileObject sibling) {
+			return new SimpleJavaFileObject(URI.create("memory:///"
+					+ className.replace('.', '/') + kind.extension), kind) {
+				@Override
+				public OutputStream openOutputStream() {
+					final ByteArrayOutputStream out = new ByteArrayOutputStream();
+					MemoryFileManager.this.classes.put(className, out);
+					return out;
+				}
+			};
+		}
+	}
+
+	private static class MemorySource extends SimpleJavaFileObject {
+		private final String content;
+
+		public MemorySource(final Path file, final String content) {
+			super(URI.create("memory:///" + file.getFileName()),
+					JavaFileObject.Kind.SOURCE);
+			this.content = content;
+		}
+
+		@Override
+		public CharSequence getCharContent(final boolean ignoreEncodingErrors) {
+			return this.content;
+		}
+	}
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(InProcessJavaCompiler.class);
+
+	private static final long TIMEOUT = Long.getLong(
+			"cerberus.javac.timeout", 20000);
+
+	private static final javax.tools.JavaCompiler compiler = ToolProvider
+			.getSystemJavaCompiler();
+
+	/**
+	 * Standard file managers cache the platform classes, so each compiler
+	 * thread keeps its own instead of opening a new one per compilation.
+	 */
+	private static final ThreadLocal<StandardJavaFileManager> standardFileManagers = ThreadLocal
+			.withInitial(() -> InProcessJavaCompiler.compiler
+					.getStandardFileManager(null, Locale.ROOT,
+							StandardCharsets.UTF_8));
+
+	private static final ExecutorService compilerThreads = Executors
+			.newCachedThreadPool(runnable -> {
+				final Thread thread = new Thread(runnable,
+						"cerberus-javac");
+				thread.setDaemon(true);
+				return thread;
+			});
+
+	/**
+	 * @return true if this JVM ships a Java compiler and in-process
+	 *         compilation hasn't been disabled with
+	 *         <code>cerberus.javac.inProcess=false</code>
+	 */
+	public static boolean isAvailable() {
+		return InProcessJavaCompiler.compiler != null
+				&& Boolean.parseBoolean(System.getProperty(
+						"cerberus.javac.inProcess", "true"));
+	}
+
+	private List<String> arguments = new ArrayList<>();
+
+	public InProcessJavaCompiler() {
+	}
+
+	@Override
+	public void addArgument(final String argument) {
+		this.arguments.add(argument);
+	}
+
+	@Override
+	public void compile(final List<Path> inputFiles, final Path outputFile,
+			final Map<String, Object> additionalParameters)
+			throws CompilationException, IOException {
+		final List<String> options = new ArrayList<>();
+		this.arguments.forEach((arg) -> options.add(ProcessLauncher
+				.substitute(arg, additionalParameters)));
+		options.add("-nowarn");
+		options.add("-proc:none");
+		options.add("-encoding");
+		options.add(StandardCharsets.UTF_8.name());
+		options.addAll(InProcessJavaCompiler.getReleaseOptions());
+
+		final List<MemorySource> sources = new ArrayList<>();
+		for (final Path file : inputFiles) {
+			sources.add(new MemorySource(file, new String(FileAccess
+					.readAllBytes(file), StandardCharsets.UTF_8)));
+		}
+
+		InProcessJavaCompiler.logger.debug(
+				"Compiling {} in process with options {}", inputFiles, options);
+
+		final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+		final StringWriter output = new StringWriter();
+		final Map<String, ByteArrayOutputStream> classes = new LinkedHashMap<>();
+
+		final Future<Boolean> task = InProcessJavaCompiler.compilerThreads
+				.submit(() -> InProcessJavaCompiler.compiler.getTask(
+						output,
+						new MemoryFileManager(
+								InProcessJavaCompiler.standardFileManagers
+										.get(), classes), diagnostics,
+						options, null, sources).call());
+		final boolean success;
+		try {
+			success = task.get(InProcessJavaCompiler.TIMEOUT,
+					TimeUnit.MILLISECONDS);
+		} catch (final TimeoutException e) {
+			task.cancel(true);
+			throw new CompilationException("javac didn't finish within "
+					+ InProcessJavaCompiler.TIMEOUT + " ms", e);
+		} catch (final InterruptedException e) {
+			task.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new CompilationException("Interrupted while compiling", e);
+		} catch (final ExecutionException e) {
+			throw new CompilationException("javac has failed",
+					(Exception) e.getCause());
+		}
+
+		if (!success) {
+			final BoundedDiagnosticsOutputStream errorStream = new BoundedDiagnosticsOutputStream(
+					Collections.emptyList());
+			errorStream.write((InProcessJavaCompiler.format(diagnostics
+					.getDiagnostics()) + output)
+					.getBytes(StandardCharsets.UTF_8));
+			final String errors = errorStream.toString(StandardCharsets.UTF_8);
+			InProcessJavaCompiler.logger.debug("Compilation error: {}", errors);
+			throw new CompilerError("javac.wrote.stderr", errors,
+					errorStream.getTruncatedBytes());
+		}
+
+		FileAccess.createDirectories(outputFile);
+		for (final Map.Entry<String, ByteArrayOutputStream> entry : classes
+				.entrySet()) {
+			final Path classFile = outputFile.resolve(entry.getKey().replace(
+					'.', '/')
+					+ ".class");
+			FileAccess.createDirectories(classFile.getParent());
+			FileAccess.write(classFile, entry.getValue().toByteArray());
+		}
+	}
+
+	/**
+	 * Formats diagnostics the way javac prints them, without the source
+	 * file's path.
+	 */
+	private static String format(
+			final List<Diagnostic<? extends JavaFileObject>> diagnostics)
+			throws IOException {
+		final StringBuilder builder = new StringBuilder();
+		for (final Diagnostic<? extends JavaFileObject> diagnostic : diagnostics) {
+			if (diagnostic.getKind() != Diagnostic.Kind.ERROR) {
+				continue;
+			}
+			builder.append(diagnostic.getLineNumber()).append(": error: ")
+					.append(diagnostic.getMessage(Locale.ROOT)).append('\n');
+			if (diagnostic.getSource() != null
+					&& diagnostic.getLineNumber() > 0) {
+				final String[] lines = diagnostic.getSource()
+						.getCharContent(true).toString().split("\n", -1);
+				if (diagnostic.getLineNumber() <= lines.length) {
+					builder.append(lines[(int) diagnostic.getLineNumber() - 1])
+							.append('\n');
+					for (long i = 1; i < diagnostic.getColumnNumber(); i++) {
+						builder.append(' ');
+					}
+					builder.append("^\n");
+				}
+			}
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Compiles for the runtime that executes submissions, which may be older
+	 * than the judge's JVM.
+	 */
+	private static List<String> getReleaseOptions() throws IOException {
+		final List<String> options = new ArrayList<>();
+		final String specification = System
+				.getProperty("java.specification.version");
+		final int version = Math.min(JavaRuntime.getDefault()
+				.getFeatureVersion(), Integer.parseInt(specification
+				.startsWith("1.") ? specification.substring(2) : specification));
+		if (version >= 9) {
+			options.add("--release");
+			options.add(Integer.toString(version));
+		} else if (version > 0) {
+			options.add("-source");
+			options.add("1." + version);
+			options.add("-target");
+			options.add("1." + version);
+		}
+		return options;
+	}
+
+	@Override
+	public List<String> getArguments() {
+		return this.arguments;
+	}
+
+	@Override
+	public String getToolchainVersion() throws IOException {
+		return "javax.tools " + System.getProperty("java.version") + " "
+				+ InProcessJavaCompiler.getReleaseOptions();
+	}
+
+	public void setArguments(final List<String> arguments) {
+		this.arguments = arguments;
+	}
+}
@@ -22,25 +22,18 @@
  */
 package org.ng200.openolympus.cerberus.compilers;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.text.MessageFormat;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
-import org.apache.commons.exec.CommandLine;
-import org.apache.commons.exec.DefaultExecutor;
-import org.apache.commons.exec.ExecuteWatchdog;
-import org.apache.commons.exec.PumpStreamHandler;
 import org.ng200.openolympus.FileAccess;
 import org.ng200.openolympus.cerberus.exceptions.CompilationException;
 import org.ng200.openolympus.cerberus.exceptions.CompilerError;
+import org.ng200.openolympus.cerberus.util.ProcessLauncher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,6 +41,7 @@ public class JavaCompiler implements Compiler {
 	private static final Logger logger = LoggerFactory
 			.getLogger(JavaCompiler.class);
 	private List<String> arguments = new ArrayList<>();
+	private CompilationSandbox sandbox = null;
 
 	public JavaCompiler() {
 	}
@@ -57,14 +51,33 @@ public class JavaCompiler implements Compiler {
 		this.arguments.add(argument);
 	}
 
+	@Override
 	public List<String> getArguments() {
 		return arguments;
 	}
 
+	@Override
+	public String getToolchainVersion() throws IOException {
+		return ToolchainVersion.of("javac", "-version");
+	}
+
 	public void setArguments(List<String> arguments) {
 		this.arguments = arguments;
 	}
 
+	public CompilationSandbox getSandbox() {
+		return this.sandbox;
+	}
+
+	/**
+	 * @param sandbox
+	 *            the sandbox to run the compiler in, or null to run it
+	 *            directly
+	 */
+	public void setSandbox(CompilationSandbox sandbox) {
+		this.sandbox = sandbox;
+	}
+
 	@Override
 	public void compile(final List<Path> inputFiles, final Path outputFile,
 			final Map<String, Object> additionalParameters)
@@ -72,40 +85,38 @@ public class JavaCompiler implements Compiler {
 
 		FileAccess.createDirectories(outputFile);
 
-		final CommandLine commandLine = new CommandLine("javac");
-		commandLine.setSubstitutionMap(additionalParameters);
+		final List<String> command = new ArrayList<>();
+		command.add("javac");
 
-		this.arguments.forEach((arg) -> commandLine.addArgument(arg));
+		this.arguments.forEach((arg) -> command.add(ProcessLauncher
+				.substitute(arg, additionalParameters)));
 
-		commandLine.addArgument("-d");
-		commandLine.addArgument(outputFile.toAbsolutePath().toString());
+		command.add("-d");
+		command.add(outputFile.toAbsolutePath().toString());
 
-		commandLine.addArgument("-nowarn"); // Prohibit warnings because they
+		command.add("-nowarn"); // Prohibit warnings because they
 		// screw
 		// up error detection
 
-		inputFiles.forEach((file) -> commandLine.addArguments(MessageFormat
-				.format("\"{0}\"", file.toAbsolutePath().toString()))); // Add
-		// input
-		// files
-
-		JavaCompiler.logger.info("Running javac with arguments: {}",
-				Arrays.asList(commandLine.getArguments()));
+		inputFiles.forEach((file) -> command.add(file.toAbsolutePath()
+				.toString())); // Add input files
 
-		final DefaultExecutor executor = new DefaultExecutor();
-		executor.setExitValues(new int[] {
-				0,
-				1
-		});
+		JavaCompiler.logger.info("Running javac with arguments: {}", command);
 
-		final ByteArrayOutputStream errorStream = new ByteArrayOutputStream();
-		executor.setStreamHandler(new PumpStreamHandler(null, errorStream, null));
-
-		executor.setWatchdog(new ExecuteWatchdog(20000));// 20 seconds to
-		// compile
+		final BoundedDiagnosticsOutputStream errorStream = new BoundedDiagnosticsOutputStream(
+				inputFiles.stream().map(file -> file.toAbsolutePath().toString() + ":")
+						.collect(Collectors.toList()));
 		int result;
 		try {
-			result = executor.execute(commandLine);
+			if (this.sandbox != null) {
+				this.sandbox.allowWrites(outputFile);
+				result = this.sandbox.execute(command, errorStream, false) ? 0
+						: 1;
+			} else {
+				result = new ProcessLauncher(command).setExitValues(0, 1)
+						.setErrorStream(errorStream).setTimeout(20000) // 20 seconds
+						.execute();
+			}
 		} catch (final IOException e) {
 			JavaCompiler.logger.error("Could not execute javac: {}", e);
 			throw new CompilationException("Could not execute javac", e);
@@ -115,26 +126,11 @@ public class JavaCompiler implements Compiler {
 		case 0:
 			return;
 		case 1:
-			try {
-				String errorString = errorStream.toString("UTF-8");
-				final Pattern pattern = Pattern.compile(
-						"^("
-								+ inputFiles
-										.stream()
-										.map(file -> Pattern.quote(file
-												.toAbsolutePath().toString()))
-										.collect(Collectors.joining("|"))
-								+ "):", Pattern.MULTILINE);
-				errorString = pattern.matcher(errorString).replaceAll("");
-
-				JavaCompiler.logger.debug("Compilation error: {}", errorString);
-
-				throw new CompilerError("javac.wrote.stderr", errorString);
-			} catch (final UnsupportedEncodingException e) {
-				throw new CompilationException(
-						"Unsupported encoding! The compiler should output UTF-8!",
-						e);
-			}
+			final String errorString = errorStream
+					.toString(StandardCharsets.UTF_8);
+			JavaCompiler.logger.debug("Compilation error: {}", errorString);
+			throw new CompilerError("javac.wrote.stderr", errorString,
+					errorStream.getTruncatedBytes());
 		}
 	}
 }
@@ -0,0 +1,176 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014-2015 Nick Guletskii
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ng200.openolympus.cerberus.compilers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+import org.ng200.openolympus.FileAccess;
+import org.ng200.openolympus.cerberus.util.ProcessLauncher;
+import org.ng200.openolympus.cerberus.util.TemporaryStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Precompiled versions of headers that most C++ submissions include. GCC
+ * looks for <code>name.gch</code> in every include directory before
+ * <code>name</code> itself, so putting a directory of precompiled headers
+ * first on the include path is enough for them to be picked up. A
+ * precompiled header that was built with different flags is silently
+ * ignored, and the compiler falls through to the real header.
+ */
+public class PrecompiledHeaders {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(PrecompiledHeaders.class);
+
+	private static final String COMPLETE = "complete";
+
+	private static PrecompiledHeaders defaultHeaders = null;
+
+	/**
+	 * @return the headers listed in <code>cerberus.pch.headers</code>
+	 *         (<code>bits/stdc++.h</code> by default), or null if the list is
+	 *         empty
+	 */
+	public static synchronized PrecompiledHeaders getDefault()
+			throws IOException {
+		final String headers = System.getProperty("cerberus.pch.headers",
+				"bits/stdc++.h");
+		if (headers.trim().isEmpty()) {
+			return null;
+		}
+		if (PrecompiledHeaders.defaultHeaders == null) {
+			final String directory = System
+					.getProperty("cerberus.pch.directory");
+			PrecompiledHeaders.defaultHeaders = new PrecompiledHeaders(
+					directory != null ? FileSystems.getDefault().getPath(
+							directory) : TemporaryStorage
+							.createTemporaryDirectory("cerberus-pch"),
+					Arrays.stream(headers.split(",")).map(String::trim)
+							.collect(Collectors.toList()));
+		}
+		return PrecompiledHeaders.defaultHeaders;
+	}
+
+	private final Path root;
+
+	private final List<String> headers;
+
+	private final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<>();
+
+	public PrecompiledHeaders(final Path root, final List<String> headers) {
+		this.root = root;
+		this.headers = new ArrayList<>(headers);
+	}
+
+	private boolean build(final String compiler, final List<String> arguments,
+			final Path directory) throws IOException {
+		FileAccess.createDirectories(directory);
+		for (final String header : this.headers) {
+			final Path wrapper = directory.resolve("wrapper.h");
+			FileAccess.writeUTF8StringToFile(wrapper, "#include <" + header
+					+ ">\n");
+			final Path output = directory.resolve(header + ".gch");
+			FileAccess.createDirectories(output.getParent());
+
+			final List<String> command = new ArrayList<>();
+			command.add(compiler);
+			command.addAll(arguments);
+			command.add("-x");
+			command.add("c++-header");
+			command.add(wrapper.toAbsolutePath().toString());
+			command.add("-o");
+			command.add(output.toAbsolutePath().toString());
+
+			PrecompiledHeaders.logger.info("Precompiling {}: {}", header,
+					command);
+			final ByteArrayOutputStream errorStream = new ByteArrayOutputStream();
+			try {
+				new ProcessLauncher(command).setErrorStream(errorStream)
+						.setTimeout(120000).execute();
+			} catch (final IOException e) {
+				PrecompiledHeaders.logger.warn(
+						"Couldn't precompile {}, compiling without it: {}\n{}",
+						header, e, errorStream);
+				return false;
+			} finally {
+				FileAccess.delete(wrapper);
+			}
+		}
+		FileAccess.createFile(directory.resolve(PrecompiledHeaders.COMPLETE));
+		return true;
+	}
+
+	/**
+	 * Returns the directory of headers precompiled for the given compiler
+	 * and arguments, building them on first use.
+	 *
+	 * @param arguments
+	 *            all arguments that affect code generation, in the order
+	 *            they are passed to the compiler
+	 * @return the directory to add to the include path, or null if the
+	 *         headers couldn't be precompiled
+	 */
+	public Path getIncludeDirectory(final String compiler,
+			final List<String> arguments) throws IOException {
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 isn't available", e);
+		}
+		digest.update(ToolchainVersion.of(compiler, "--version").getBytes(
+				StandardCharsets.UTF_8));
+		for (final String argument : arguments) {
+			digest.update((byte) 0);
+			digest.update(argument.getBytes(StandardCharsets.UTF_8));
+		}
+		final String key = CompilationCache.toHex(digest.digest());
+		final Path directory = this.root.resolve(key);
+
+		synchronized (this.locks.computeIfAbsent(key, k -> new Object())) {
+			if (FileAccess.exists(directory
+					.resolve(PrecompiledHeaders.COMPLETE))) {
+				return directory;
+			}
+			if (FileAccess.exists(directory)) {
+				// An earlier attempt has failed
+				return null;
+			}
+			return this.build(compiler, arguments, directory) ? directory
+					: null;
+		}
+	}
+}
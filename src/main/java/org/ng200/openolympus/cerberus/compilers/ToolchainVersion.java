@@ -0,0 +1,63 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014-2015 Nick Guletskii
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ng200.openolympus.cerberus.compilers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.ng200.openolympus.cerberus.util.ProcessLauncher;
+
+/**
+ * Asks compilers for their versions. The answers are remembered for the
+ * lifetime of the process.
+ */
+public final class ToolchainVersion {
+
+	private static final ConcurrentMap<List<String>, String> versions = new ConcurrentHashMap<>();
+
+	/**
+	 * @return the first line the command prints
+	 */
+	public static String of(final String... command) throws IOException {
+		final List<String> key = Arrays.asList(command);
+		final String cached = ToolchainVersion.versions.get(key);
+		if (cached != null) {
+			return cached;
+		}
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new ProcessLauncher(key).setOutputStream(out)
+				.setRedirectErrorStream(true).setTimeout(20000).execute();
+		final String version = new String(out.toByteArray(),
+				StandardCharsets.UTF_8).trim().split("\n")[0];
+		ToolchainVersion.versions.putIfAbsent(key, version);
+		return version;
+	}
+
+	private ToolchainVersion() {
+	}
+}
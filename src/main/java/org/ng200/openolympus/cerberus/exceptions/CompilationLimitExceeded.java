@@ -0,0 +1,56 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014-2015 Nick Guletskii
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ng200.openolympus.cerberus.exceptions;
+
+import org.ng200.openolympus.cerberus.ExecutionResult.ExecutionResultType;
+
+/**
+ * Thrown when a sandboxed compiler exceeds its time, memory or output limit.
+ */
+public class CompilationLimitExceeded extends CompilerError {
+
+	/**
+	 *
+	 */
+	private static final long serialVersionUID = -2394019872340198127L;
+	private ExecutionResultType limit;
+
+	public CompilationLimitExceeded(final String message,
+			final String errors, final long truncatedBytes,
+			final ExecutionResultType limit) {
+		super(message, errors, truncatedBytes);
+		this.limit = limit;
+	}
+
+	/**
+	 * @return TIME_LIMIT, MEMORY_LIMIT or OUTPUT_LIMIT
+	 */
+	public ExecutionResultType getLimit() {
+		return this.limit;
+	}
+
+	public void setLimit(ExecutionResultType limit) {
+		this.limit = limit;
+	}
+
+}
@@ -29,6 +29,7 @@ public class CompilerError extends CompilationException {
 	 */
 	private static final long serialVersionUID = 4068648124145091620L;
 	private String errors;
+	private long truncatedBytes = 0;
 
 	public void setErrors(String errors) {
 		this.errors = errors;
@@ -39,8 +40,27 @@ public class CompilerError extends CompilationException {
 		this.errors = errors;
 	}
 
+	/**
+	 * @param truncatedBytes
+	 *            how many bytes of the compiler's output were left out of
+	 *            the errors
+	 */
+	public CompilerError(final String message, final String errors,
+			final long truncatedBytes) {
+		this(message, errors);
+		this.truncatedBytes = truncatedBytes;
+	}
+
 	public String getErrors() {
 		return this.errors;
 	}
 
+	public long getTruncatedBytes() {
+		return this.truncatedBytes;
+	}
+
+	public void setTruncatedBytes(long truncatedBytes) {
+		this.truncatedBytes = truncatedBytes;
+	}
+
 }
@@ -0,0 +1,235 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014-2015 Nick Guletskii
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ng200.openolympus.cerberus.executors;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import org.ng200.openolympus.cerberus.util.ProcessLauncher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hands out dedicated CPU cores to sandboxed runs, so that concurrent runs
+ * don't steal time from each other. The judge's own threads are moved off
+ * the leasable cores. Without any configured cores, leases are empty and
+ * programs run wherever the scheduler puts them.
+ */
+public class CpuCoreLeaseManager {
+
+	public static class Lease implements AutoCloseable {
+		private final CpuCoreLeaseManager manager;
+		private final List<Integer> cores;
+		private final AtomicBoolean leased = new AtomicBoolean();
+
+		private Lease(final CpuCoreLeaseManager manager,
+				final List<Integer> cores) {
+			this.manager = manager;
+			this.cores = cores;
+		}
+
+		@Override
+		public void close() {
+			if (this.leased.compareAndSet(true, false)) {
+				this.manager.release(this);
+			}
+		}
+
+		public List<Integer> getCores() {
+			return this.cores;
+		}
+
+		public String getCpuList() {
+			return CpuCoreLeaseManager.toCpuList(this.cores);
+		}
+
+		/**
+		 * Prefixes the command with taskset, so that the process and all of
+		 * its children only run on the leased cores.
+		 */
+		public List<String> pin(final List<String> command) {
+			if (this.cores.isEmpty()) {
+				return command;
+			}
+			final List<String> pinned = new ArrayList<>(command.size() + 3);
+			pinned.add("taskset");
+			pinned.add("-c");
+			pinned.add(this.getCpuList());
+			pinned.addAll(command);
+			return pinned;
+		}
+
+		@Override
+		public String toString() {
+			return this.cores.isEmpty() ? "any CPU" : "CPUs "
+					+ this.getCpuList();
+		}
+	}
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(CpuCoreLeaseManager.class);
+
+	private static CpuCoreLeaseManager defaultManager = null;
+
+	public static synchronized CpuCoreLeaseManager getDefault()
+			throws IOException {
+		if (CpuCoreLeaseManager.defaultManager == null) {
+			final CpuCoreLeaseManager manager = new CpuCoreLeaseManager(
+					CpuCoreLeaseManager.parseCpuList(System.getProperty(
+							"cerberus.sandbox.cores", "")), Integer.getInteger(
+							"cerberus.sandbox.coresPerRun", 1));
+			manager.pinCurrentProcess();
+			CpuCoreLeaseManager.defaultManager = manager;
+		}
+		return CpuCoreLeaseManager.defaultManager;
+	}
+
+	/**
+	 * Parses lists like <code>2-5,8</code>, as used by taskset and cpusets.
+	 */
+	public static List<Integer> parseCpuList(final String cpuList) {
+		final TreeSet<Integer> cores = new TreeSet<>();
+		for (final String range : cpuList.split(",")) {
+			final String trimmed = range.trim();
+			if (trimmed.isEmpty()) {
+				continue;
+			}
+			final int dash = trimmed.indexOf('-');
+			if (dash < 0) {
+				cores.add(Integer.parseInt(trimmed));
+			} else {
+				final int last = Integer.parseInt(trimmed.substring(dash + 1));
+				for (int core = Integer.parseInt(trimmed.substring(0, dash)); core <= last; core++) {
+					cores.add(core);
+				}
+			}
+		}
+		return new ArrayList<>(cores);
+	}
+
+	public static String toCpuList(final List<Integer> cores) {
+		return cores.stream().map(String::valueOf)
+				.collect(Collectors.joining(","));
+	}
+
+	private final List<Integer> cores;
+	private final int concurrency;
+	private final BlockingQueue<Lease> leases = new LinkedBlockingQueue<>();
+	private final Lease unpinned = new Lease(this, new ArrayList<>());
+
+	public CpuCoreLeaseManager(final List<Integer> cores,
+			final int coresPerRun) {
+		if (coresPerRun < 1) {
+			throw new IllegalArgumentException(
+					"Each run needs at least one core");
+		}
+		this.cores = new ArrayList<>(cores);
+		for (int i = 0; i + coresPerRun <= this.cores.size(); i += coresPerRun) {
+			this.leases.add(new Lease(this, new ArrayList<>(this.cores.subList(
+					i, i + coresPerRun))));
+		}
+		if (this.cores.isEmpty()) {
+			this.concurrency = Runtime.getRuntime().availableProcessors();
+		} else {
+			this.concurrency = this.leases.size();
+		}
+		CpuCoreLeaseManager.logger.info(
+				"Leasable cores: {}, concurrent runs: {}", this.cores,
+				this.concurrency);
+	}
+
+	/**
+	 * @return how many sandboxed runs this node should execute at once
+	 */
+	public int getConcurrency() {
+		return this.concurrency;
+	}
+
+	public List<Integer> getCores() {
+		return this.cores;
+	}
+
+	public boolean isEnabled() {
+		return !this.cores.isEmpty();
+	}
+
+	/**
+	 * Waits until a set of cores is free and takes it. The lease must be
+	 * closed once the run that uses it is over.
+	 */
+	public Lease lease() throws IOException {
+		if (!this.isEnabled()) {
+			return this.unpinned;
+		}
+		try {
+			final Lease lease = this.leases.take();
+			lease.leased.set(true);
+			return lease;
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(
+					"Interrupted while waiting for a CPU core");
+		}
+	}
+
+	/**
+	 * Moves every thread of this JVM off the leasable cores. Threads created
+	 * later inherit the affinity of the thread that creates them.
+	 */
+	public void pinCurrentProcess() throws IOException {
+		if (!this.isEnabled()) {
+			return;
+		}
+		final List<Integer> otherCores = new ArrayList<>();
+		for (int core = 0; core < Runtime.getRuntime().availableProcessors(); core++) {
+			if (!this.cores.contains(core)) {
+				otherCores.add(core);
+			}
+		}
+		if (otherCores.isEmpty()) {
+			CpuCoreLeaseManager.logger
+					.warn("All cores are leasable, the judge will share them with sandboxed programs");
+			return;
+		}
+		final String pid = new File("/proc/self").getCanonicalFile()
+				.getName();
+		CpuCoreLeaseManager.logger.info("Pinning judge process {} to CPUs {}",
+				pid, otherCores);
+		new ProcessLauncher(Arrays.asList("taskset", "-a", "-p", "-c",
+				CpuCoreLeaseManager.toCpuList(otherCores), pid))
+				.setTimeout(1000).execute();
+	}
+
+	private void release(final Lease lease) {
+		this.leases.add(lease);
+	}
+}
@@ -27,13 +27,33 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
 
 import org.ng200.openolympus.cerberus.ExecutionResult;
 
 public interface Executor extends Closeable {
 
+	/**
+	 * How long the host waits for a sandbox beyond the run's own limits
+	 * before killing it, in milliseconds.
+	 */
+	public static final long WATCHDOG_MARGIN = Long.getLong(
+			"cerberus.watchdog.margin", 5000);
+
+	/**
+	 * The host-side deadline for runs that have no limits.
+	 */
+	public static final long DEFAULT_WATCHDOG_TIMEOUT = 60000;
+
 	public abstract ExecutionResult execute(Path program) throws IOException;
 
+	/**
+	 * Starts the program and returns without waiting for it to finish. The
+	 * executor must not be reconfigured or reset until the future completes.
+	 */
+	public abstract CompletableFuture<ExecutionResult> executeAsync(
+			Path program) throws IOException;
+
 	public abstract long getCpuLimit();
 
 	public abstract long getDiskLimit();
@@ -43,6 +63,8 @@ public interface Executor extends Closeable {
 	public abstract void getFile(String name, Path destination)
 			throws IOException;
 
+	public abstract Path getInputFile();
+
 	public abstract InputStream getInputStream();
 
 	public abstract long getMemoryLimit();
@@ -51,14 +73,30 @@ public interface Executor extends Closeable {
 
 	public abstract long getTimeLimit();
 
+	/**
+	 * @return how long the host waits for a run before it kills the sandbox
+	 *         and reports an internal error
+	 */
+	public default long getWatchdogTimeout() {
+		final long limit = Math.max(this.getTimeLimit(), this.getCpuLimit());
+		if (limit <= 0) {
+			return Executor.DEFAULT_WATCHDOG_TIMEOUT;
+		}
+		return limit + Executor.WATCHDOG_MARGIN;
+	}
+
 	public abstract void provideFile(Path file) throws IOException;
 
+	public abstract void reset() throws IOException;
+
 	public abstract Executor setCpuLimit(long cpuLimit);
 
 	public abstract Executor setDiskLimit(long diskLimit);
 
 	public abstract Executor setErrorStream(OutputStream errorStream);
 
+	public abstract Executor setInputFile(Path inputFile);
+
 	public abstract Executor setInputStream(InputStream inputStream);
 
 	public abstract Executor setMemoryLimit(long memoryLimit);
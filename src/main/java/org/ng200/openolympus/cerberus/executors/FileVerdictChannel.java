@@ -0,0 +1,67 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014-2015 Nick Guletskii
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ng200.openolympus.cerberus.executors;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.ng200.openolympus.FileAccess;
+import org.ng200.openolympus.cerberus.ExecutionResult;
+
+public class FileVerdictChannel implements VerdictChannel {
+
+	private final Path path;
+
+	public FileVerdictChannel(final Path path) {
+		this.path = path;
+	}
+
+	@Override
+	public void close() throws IOException {
+		// Nothing to release
+	}
+
+	@Override
+	public Path getPath() {
+		return this.path;
+	}
+
+	@Override
+	public boolean hasVerdict() {
+		return FileAccess.exists(this.path);
+	}
+
+	@Override
+	public void prepare() throws IOException {
+		if (FileAccess.exists(this.path)) {
+			FileAccess.delete(this.path);
+		}
+	}
+
+	@Override
+	public ExecutionResult read() throws IOException {
+		final String text = FileAccess.readUTF8String(this.path);
+		FileAccess.delete(this.path);
+		return VerdictParser.parse(text);
+	}
+}
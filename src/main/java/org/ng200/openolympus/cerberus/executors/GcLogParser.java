@@ -0,0 +1,77 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014-2015 Nick Guletskii
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ng200.openolympus.cerberus.executors;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures the peak heap usage of a JVM from a log written with
+ * <code>-Xlog:gc,gc+heap+exit</code>. The heap is at its fullest right
+ * before each collection and, if it never fills up again, at exit, so the
+ * peak is the largest of these figures.
+ */
+public final class GcLogParser {
+
+	private static final Pattern PAUSE_PATTERN = Pattern
+			.compile("(\\d+)([KMG])->\\d+[KMG]\\(\\d+[KMG]\\)");
+
+	private static final Pattern EXIT_PATTERN = Pattern.compile(
+			"^ \\S.*\\btotal \\d+K, used (\\d+)K", Pattern.MULTILINE);
+
+	/**
+	 * @return the peak heap usage in bytes, or -1 if the log has no heap
+	 *         usage figures
+	 */
+	public static long parse(final CharSequence log) {
+		long peak = -1;
+
+		final Matcher pause = GcLogParser.PAUSE_PATTERN.matcher(log);
+		while (pause.find()) {
+			peak = Math.max(peak, GcLogParser.toBytes(
+					Long.parseLong(pause.group(1)), pause.group(2).charAt(0)));
+		}
+
+		long used = -1;
+		final Matcher exit = GcLogParser.EXIT_PATTERN.matcher(log);
+		while (exit.find()) {
+			used = Math.max(used, 0) + Long.parseLong(exit.group(1)) * 1024;
+		}
+
+		return Math.max(peak, used);
+	}
+
+	private static long toBytes(final long value, final char unit) {
+		switch (unit) {
+		case 'G':
+			return value * 1024 * 1024 * 1024;
+		case 'M':
+			return value * 1024 * 1024;
+		default:
+			return value * 1024;
+		}
+	}
+
+	private GcLogParser() {
+	}
+}
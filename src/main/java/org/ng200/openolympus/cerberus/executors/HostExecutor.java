@@ -0,0 +1,301 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014-2015 Nick Guletskii
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ng200.openolympus.cerberus.executors;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.ng200.openolympus.FileAccess;
+import org.ng200.openolympus.cerberus.ExecutionResult;
+import org.ng200.openolympus.cerberus.util.ProcessLauncher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs a program from the host's file system under olympus_watchdog or the
+ * namespace runner with / as the jail. Host tools such as compilers see the
+ * installed toolchain, but are subject to the same limits as solutions.
+ */
+public class HostExecutor extends OpenOlympusWatchdogExecutor implements
+		Executor {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(HostExecutor.class);
+
+	private final Path workingDirectory;
+	private final boolean namespaces;
+	private final VerdictChannel verdictChannel;
+	private List<String> arguments = new ArrayList<>();
+	private long memoryLimit = 0;
+	private long cpuLimit = 0;
+	private long timeLimit = 0;
+	private long diskLimit = 0;
+	private Path inputFile = null;
+	private InputStream inputStream = null;
+	private OutputStream errorStream = null;
+	private OutputStream outputStream = null;
+
+	/**
+	 * @param workingDirectory
+	 *            a directory for the verdict and for files that are provided
+	 *            to the program
+	 * @param namespaces
+	 *            whether to use the namespace runner instead of
+	 *            olympus_watchdog
+	 */
+	public HostExecutor(final Path workingDirectory, final boolean namespaces) {
+		this.workingDirectory = workingDirectory;
+		this.namespaces = namespaces;
+		this.verdictChannel = VerdictChannel.open(workingDirectory
+				.resolve("verdict.txt"));
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.verdictChannel.close();
+	}
+
+	private ProcessLauncher createLauncher(final Path program,
+			final SandboxIdentityPool.Identity identity,
+			final CpuCoreLeaseManager.Lease cores) throws IOException {
+		final List<String> command = new ArrayList<>();
+		if (this.namespaces) {
+			command.addAll(NamespaceExecutor.UNSHARE_COMMAND);
+			command.add(NamespaceExecutor.getRunner().toAbsolutePath()
+					.toString());
+			command.add("/");
+			command.add(this.verdictChannel.getPath().toAbsolutePath()
+					.toString());
+			command.add(Long.toString(this.cpuLimit));
+			command.add(Long.toString(this.timeLimit));
+			command.add(Long.toString(this.memoryLimit));
+			command.add(Long.toString(this.diskLimit));
+		} else {
+			command.add("sudo");
+			command.add("olympus_watchdog");
+			this.setUpOlrunnerLimits(command, identity);
+			command.add("--jail=/");
+		}
+		command.add("--");
+		command.add(program.toAbsolutePath().toString());
+		command.addAll(this.arguments);
+
+		return new ProcessLauncher(cores.pin(command))
+				.setTimeout(this.getWatchdogTimeout())
+				.setWorkingDirectory(this.workingDirectory)
+				.setOutputStream(this.outputStream)
+				.setErrorStream(this.errorStream)
+				.setInputFile(this.inputFile)
+				.setInputStream(this.inputStream);
+	}
+
+	@Override
+	public ExecutionResult execute(final Path program) throws IOException {
+		if (!this.namespaces) {
+			return this.launchWatchdog(
+					(identity, cores) -> this.createLauncher(program,
+							identity, cores), this.verdictChannel);
+		}
+		try (CpuCoreLeaseManager.Lease cores = CpuCoreLeaseManager
+				.getDefault().lease()) {
+			final ProcessLauncher launcher = this.createLauncher(program,
+					null, cores);
+			HostExecutor.logger.debug("Executing in namespaces on {}: {}",
+					cores, launcher);
+			this.verdictChannel.prepare();
+			IOException failure = null;
+			try {
+				launcher.execute();
+			} catch (final ProcessLauncher.ExitValueException e) {
+				failure = e;
+			}
+			return this.verdictChannel.readAfter(launcher, failure);
+		}
+	}
+
+	@Override
+	public CompletableFuture<ExecutionResult> executeAsync(final Path program)
+			throws IOException {
+		if (!this.namespaces) {
+			return this.launchWatchdogAsync(
+					(identity, cores) -> this.createLauncher(program,
+							identity, cores), this.verdictChannel);
+		}
+		final CpuCoreLeaseManager.Lease cores = CpuCoreLeaseManager
+				.getDefault().lease();
+		final ProcessLauncher launcher;
+		try {
+			launcher = this.createLauncher(program, null, cores);
+			this.verdictChannel.prepare();
+		} catch (final IOException | RuntimeException e) {
+			cores.close();
+			throw e;
+		}
+		return launcher.executeAsync().handle(
+				(exitValue, throwable) -> {
+					cores.close();
+					final Throwable cause = throwable instanceof CompletionException ? throwable
+							.getCause() : throwable;
+					if (cause != null && !(cause instanceof IOException)) {
+						throw new CompletionException(cause);
+					}
+					try {
+						return this.verdictChannel.readAfter(launcher,
+								(IOException) cause);
+					} catch (final IOException e) {
+						throw new CompletionException(e);
+					}
+				});
+	}
+
+	public List<String> getArguments() {
+		return this.arguments;
+	}
+
+	@Override
+	public long getCpuLimit() {
+		return this.cpuLimit;
+	}
+
+	@Override
+	public long getDiskLimit() {
+		return this.diskLimit;
+	}
+
+	@Override
+	public OutputStream getErrorStream() {
+		return this.errorStream;
+	}
+
+	@Override
+	public void getFile(final String name, final Path destination)
+			throws IOException {
+		FileAccess.copy(this.workingDirectory.resolve(name), destination,
+				StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	@Override
+	public Path getInputFile() {
+		return this.inputFile;
+	}
+
+	@Override
+	public InputStream getInputStream() {
+		return this.inputStream;
+	}
+
+	@Override
+	public long getMemoryLimit() {
+		return this.memoryLimit;
+	}
+
+	@Override
+	public OutputStream getOutputStream() {
+		return this.outputStream;
+	}
+
+	@Override
+	public long getTimeLimit() {
+		return this.timeLimit;
+	}
+
+	public Path getWorkingDirectory() {
+		return this.workingDirectory;
+	}
+
+	public boolean isNamespaces() {
+		return this.namespaces;
+	}
+
+	@Override
+	public void provideFile(final Path file) throws IOException {
+		FileAccess.copy(file,
+				this.workingDirectory.resolve(file.getFileName()),
+				StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	@Override
+	public void reset() throws IOException {
+		this.verdictChannel.prepare();
+	}
+
+	public HostExecutor setArguments(final List<String> arguments) {
+		this.arguments = arguments;
+		return this;
+	}
+
+	@Override
+	public HostExecutor setCpuLimit(final long cpuLimit) {
+		this.cpuLimit = cpuLimit;
+		return this;
+	}
+
+	@Override
+	public HostExecutor setDiskLimit(final long diskLimit) {
+		this.diskLimit = diskLimit;
+		return this;
+	}
+
+	@Override
+	public HostExecutor setErrorStream(final OutputStream errorStream) {
+		this.errorStream = errorStream;
+		return this;
+	}
+
+	@Override
+	public HostExecutor setInputFile(final Path inputFile) {
+		this.inputFile = inputFile;
+		return this;
+	}
+
+	@Override
+	public HostExecutor setInputStream(final InputStream inputStream) {
+		this.inputStream = inputStream;
+		return this;
+	}
+
+	@Override
+	public HostExecutor setMemoryLimit(final long memoryLimit) {
+		this.memoryLimit = memoryLimit;
+		return this;
+	}
+
+	@Override
+	public HostExecutor setOutputStream(final OutputStream outputStream) {
+		this.outputStream = outputStream;
+		return this;
+	}
+
+	@Override
+	public HostExecutor setTimeLimit(final long timeLimit) {
+		this.timeLimit = timeLimit;
+		return this;
+	}
+}
@@ -0,0 +1,179 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014-2015 Nick Guletskii
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ng200.openolympus.cerberus.executors;
+
+import java.io.IOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.ng200.openolympus.FileAccess;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Materialises a chroot template as a tree of hard links. Only the paths the
+ * sandbox may write to are copied, so building a jail costs about as much as
+ * creating its directory entries. Falls back to copying when the template
+ * and the jail are on different filesystems or the kernel refuses to link.
+ * <p>
+ * A hard link shares its inode with the template, so a write or chmod
+ * through any jail would change every later jail. Linked files are therefore
+ * made read-only in the template first; files that can't be made read-only,
+ * or that are writable by group or others, are copied instead.
+ */
+public class JailBuilder {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(JailBuilder.class);
+
+	public static JailBuilder forTemplate(final Path template) {
+		return new JailBuilder(template, Arrays.asList(System.getProperty(
+				"cerberus.jail.copiedPaths", "tmp").split(",")));
+	}
+
+	private final Path template;
+	private final List<Path> copiedPaths;
+	private volatile boolean linkingSupported = true;
+
+	public JailBuilder(final Path template, final Collection<String> copiedPaths) {
+		this.template = template;
+		this.copiedPaths = copiedPaths.stream().map(String::trim)
+				.filter(path -> !path.isEmpty())
+				.map(path -> template.getFileSystem().getPath(path))
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * Builds a jail inside the target directory. Like "rsync -r", the
+	 * template directory itself is recreated inside the target, so a template
+	 * at /usr/chroot produces target/chroot.
+	 */
+	public Path build(final Path target) throws IOException {
+		final Path destination = target.resolve(this.template.getFileName()
+				.toString());
+		FileAccess.createDirectories(destination);
+
+		final boolean link = this.linkingSupported
+				&& FileAccess.getFileStore(this.template).equals(
+						FileAccess.getFileStore(destination));
+
+		FileAccess.walkFileTree(this.template, new SimpleFileVisitor<Path>() {
+			private boolean linkFiles = link;
+
+			@Override
+			public FileVisitResult preVisitDirectory(final Path dir,
+					final BasicFileAttributes attrs) throws IOException {
+				FileAccess.createDirectories(JailBuilder.this.resolve(
+						destination, dir));
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(final Path file,
+					final BasicFileAttributes attrs) throws IOException {
+				final Path target = JailBuilder.this.resolve(destination, file);
+				if (attrs.isSymbolicLink()) {
+					FileAccess.createSymbolicLink(target,
+							FileAccess.readSymbolicLink(file));
+				} else if (attrs.isRegularFile()) {
+					if (this.linkFiles && !JailBuilder.this.isCopied(file)
+							&& JailBuilder.this.makeReadOnly(file)) {
+						try {
+							FileAccess.createLink(target, file);
+							return FileVisitResult.CONTINUE;
+						} catch (final FileSystemException e) {
+							JailBuilder.logger
+									.warn("Couldn't hard link {}, falling back to copying the template: {}",
+											file, e.getMessage());
+							this.linkFiles = false;
+							JailBuilder.this.linkingSupported = false;
+						}
+					}
+					FileAccess.copy(file, target);
+				}
+				// Like rsync -r, skip devices, sockets and pipes
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return destination;
+	}
+
+	public Path getTemplate() {
+		return this.template;
+	}
+
+	private boolean isCopied(final Path file) {
+		final Path relative = this.template.relativize(file);
+		return this.copiedPaths.stream().anyMatch(relative::startsWith);
+	}
+
+	public boolean isLinkingSupported() {
+		return this.linkingSupported;
+	}
+
+	/**
+	 * Removes the owner's write permission from a template file, so that
+	 * neither the sandboxed user nor the owner can write through a link.
+	 *
+	 * @return false if the file may still be written to by somebody other
+	 *         than its owner, or its owner can't be prevented from writing
+	 */
+	private boolean makeReadOnly(final Path file) throws IOException {
+		final Set<PosixFilePermission> permissions;
+		try {
+			permissions = Files.getPosixFilePermissions(file,
+					LinkOption.NOFOLLOW_LINKS);
+		} catch (final UnsupportedOperationException e) {
+			return false;
+		}
+		if (permissions.contains(PosixFilePermission.GROUP_WRITE)
+				|| permissions.contains(PosixFilePermission.OTHERS_WRITE)) {
+			return false;
+		}
+		if (permissions.remove(PosixFilePermission.OWNER_WRITE)) {
+			try {
+				Files.setPosixFilePermissions(file, permissions);
+			} catch (final FileSystemException e) {
+				// Nobody runs in a jail as root, so its files are safe to share
+				return "root".equals(Files.getOwner(file,
+						LinkOption.NOFOLLOW_LINKS).getName());
+			}
+		}
+		return true;
+	}
+
+	private Path resolve(final Path destination, final Path file) {
+		return destination.resolve(this.template.relativize(file).toString());
+	}
+}
@@ -0,0 +1,325 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014-2015 Nick Guletskii
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ng200.openolympus.cerberus.executors;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.ng200.openolympus.FileAccess;
+import org.ng200.openolympus.cerberus.util.TemporaryStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps a number of jails copied from a chroot template ready, so that
+ * executors don't have to copy the template before every run.
+ */
+public class JailPool implements AutoCloseable {
+
+	public static class Jail implements AutoCloseable {
+		private final JailPool pool;
+		private final Path path;
+		private final JailSnapshot snapshot;
+		private boolean released = false;
+
+		private Jail(final JailPool pool, final Path path,
+				final JailSnapshot snapshot) {
+			this.pool = pool;
+			this.path = path;
+			this.snapshot = snapshot;
+		}
+
+		@Override
+		public synchronized void close() throws IOException {
+			if (this.released) {
+				return;
+			}
+			this.released = true;
+			this.pool.release(this);
+		}
+
+		public Path getChroot() {
+			return this.path.resolve(this.pool.getTemplate().getFileName()
+					.toString());
+		}
+
+		public Path getPath() {
+			return this.path;
+		}
+
+		public JailPool getPool() {
+			return this.pool;
+		}
+
+		public JailSnapshot getSnapshot() {
+			return this.snapshot;
+		}
+	}
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(JailPool.class);
+
+	/**
+	 * The profile of statically linked programs, which need no shared
+	 * libraries.
+	 */
+	public static final String STATIC_PROFILE = "static";
+
+	private static final Map<Path, JailPool> pools = new HashMap<>();
+
+	private static Path staticTemplate = null;
+
+	/**
+	 * @param profile
+	 *            a language's source extension, e.g. "cpp", or
+	 *            {@link #STATIC_PROFILE}
+	 * @return the pool for the template that the
+	 *         cerberus.jail.template.&lt;profile&gt; property names. Static
+	 *         programs default to an almost empty template, everything else
+	 *         to the shared one.
+	 */
+	public static synchronized JailPool forProfile(final String profile)
+			throws IOException {
+		final String configured = System.getProperty("cerberus.jail.template."
+				+ profile);
+		if (configured != null) {
+			return JailPool.forTemplate(FileSystems.getDefault().getPath(
+					configured));
+		}
+		if (JailPool.STATIC_PROFILE.equals(profile)) {
+			return JailPool.forTemplate(JailPool.getStaticTemplate());
+		}
+		return JailPool.getDefault();
+	}
+
+	public static synchronized JailPool forTemplate(final Path template)
+			throws IOException {
+		JailPool pool = JailPool.pools.get(template);
+		if (pool == null) {
+			final JailPool createdPool = new JailPool(template,
+					TemporaryStorage.createTemporaryDirectory("cerberus-jails"),
+					Integer.getInteger("cerberus.jailPool.size", 4),
+					Integer.getInteger("cerberus.jailPool.provisioners", 1));
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				try {
+					createdPool.close();
+				} catch (final IOException e) {
+					JailPool.logger.error("Couldn't clean up jail pool: {}", e);
+				}
+			}));
+			JailPool.pools.put(template, createdPool);
+			pool = createdPool;
+		}
+		return pool;
+	}
+
+	public static synchronized JailPool getDefault() throws IOException {
+		return JailPool.forTemplate(SandboxedExecutor.CHROOT_TEMPLATE_PATH);
+	}
+
+	/**
+	 * @return a template with nothing but /tmp, which is enough for
+	 *         statically linked programs
+	 */
+	private static Path getStaticTemplate() throws IOException {
+		if (JailPool.staticTemplate == null) {
+			final Path template = TemporaryStorage.createTemporaryDirectory(
+					"cerberus-static-template").resolve("chroot");
+			FileAccess.createDirectories(template.resolve("tmp"));
+			Files.setPosixFilePermissions(template.resolve("tmp"),
+					PosixFilePermissions.fromString("rwxrwxrwx"));
+			JailPool.staticTemplate = template;
+		}
+		return JailPool.staticTemplate;
+	}
+
+	private final Path template;
+	private final JailBuilder jailBuilder;
+	private final Path root;
+	private final int capacity;
+	private final BlockingQueue<Jail> readyJails = new LinkedBlockingQueue<>();
+	private final AtomicInteger pendingJails = new AtomicInteger();
+	private final ExecutorService provisioner;
+	private volatile boolean closed = false;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong provisionedJails = new AtomicLong();
+	private final AtomicLong provisioningTime = new AtomicLong();
+
+	public JailPool(final Path template, final Path root, final int capacity,
+			final int provisionerThreads) throws IOException {
+		this.template = template;
+		this.jailBuilder = JailBuilder.forTemplate(template);
+		this.root = root;
+		this.capacity = capacity;
+		FileAccess.createDirectories(root);
+		final AtomicInteger threadNumber = new AtomicInteger();
+		this.provisioner = Executors.newFixedThreadPool(
+				Math.max(1, provisionerThreads), (runnable) -> {
+					final Thread thread = new Thread(runnable,
+							"cerberus-jail-provisioner-"
+									+ threadNumber.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		this.refill();
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.closed = true;
+		this.provisioner.shutdownNow();
+		try {
+			this.provisioner.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		FileAccess.deleteDirectoryByWalking(this.root);
+	}
+
+	public long getAverageProvisioningTime() {
+		final long provisioned = this.provisionedJails.get();
+		if (provisioned == 0) {
+			return 0;
+		}
+		return TimeUnit.NANOSECONDS.toMillis(this.provisioningTime.get()
+				/ provisioned);
+	}
+
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	public long getHits() {
+		return this.hits.get();
+	}
+
+	public long getMisses() {
+		return this.misses.get();
+	}
+
+	public long getProvisionedJails() {
+		return this.provisionedJails.get();
+	}
+
+	public long getProvisioningTimeNanos() {
+		return this.provisioningTime.get();
+	}
+
+	public int getReadyJails() {
+		return this.readyJails.size();
+	}
+
+	public Path getTemplate() {
+		return this.template;
+	}
+
+	public Jail lease() throws IOException {
+		if (this.closed) {
+			throw new IllegalStateException("Jail pool is already closed.");
+		}
+		Jail jail = this.readyJails.poll();
+		if (jail != null) {
+			this.hits.incrementAndGet();
+		} else {
+			this.misses.incrementAndGet();
+			JailPool.logger
+					.info("No ready jails for template {}, provisioning one synchronously",
+							this.template);
+			jail = this.provision();
+		}
+		this.refill();
+		return jail;
+	}
+
+	private Jail provision() throws IOException {
+		final long start = System.nanoTime();
+		final Path path = FileAccess.createTempDirectory(this.root, "jail");
+		this.jailBuilder.build(path);
+		final JailSnapshot snapshot = JailSnapshot.take(path);
+		final long elapsed = System.nanoTime() - start;
+		this.provisionedJails.incrementAndGet();
+		this.provisioningTime.addAndGet(elapsed);
+		JailPool.logger.debug("Provisioned jail {} in {}ms", path,
+				TimeUnit.NANOSECONDS.toMillis(elapsed));
+		return new Jail(this, path, snapshot);
+	}
+
+	private synchronized void refill() {
+		if (this.closed) {
+			return;
+		}
+		while (this.readyJails.size() + this.pendingJails.get() < this.capacity) {
+			this.pendingJails.incrementAndGet();
+			this.provisioner.submit(() -> {
+				try {
+					if (!this.closed) {
+						this.readyJails.add(this.provision());
+					}
+				} catch (final Exception e) {
+					JailPool.logger.error("Couldn't provision jail: {}", e);
+				} finally {
+					this.pendingJails.decrementAndGet();
+				}
+			});
+		}
+	}
+
+	private void release(final Jail jail) throws IOException {
+		if (this.closed) {
+			FileAccess.deleteDirectoryByWalking(jail.getPath());
+			return;
+		}
+		this.provisioner.submit(() -> {
+			try {
+				FileAccess.deleteDirectoryByWalking(jail.getPath());
+			} catch (final IOException e) {
+				JailPool.logger.error("Couldn't delete jail {}: {}",
+						jail.getPath(), e);
+			}
+			this.refill();
+		});
+	}
+
+	@Override
+	public String toString() {
+		return String
+				.format("JailPool [template=%s, ready=%s, hits=%s, misses=%s, provisioned=%s, averageProvisioningTime=%sms]",
+						this.template, this.readyJails.size(), this.hits.get(),
+						this.misses.get(), this.provisionedJails.get(),
+						this.getAverageProvisioningTime());
+	}
+}
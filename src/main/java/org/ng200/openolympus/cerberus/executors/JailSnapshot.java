@@ -0,0 +1,220 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014-2015 Nick Guletskii
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ng200.openolympus.cerberus.executors;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import org.ng200.openolympus.FileAccess;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A recorded listing of a jail that allows wiping everything a run has
+ * written without rebuilding the jail.
+ */
+public class JailSnapshot {
+	private static class Entry {
+		private final boolean directory;
+		private final boolean other;
+		private final long size;
+		private final FileTime lastModified;
+		private final Map<String, Object> unixAttributes;
+
+		public Entry(final Path path, final BasicFileAttributes attrs)
+				throws IOException {
+			this.directory = attrs.isDirectory();
+			this.other = attrs.isOther();
+			this.size = attrs.size();
+			this.lastModified = attrs.lastModifiedTime();
+			this.unixAttributes = JailSnapshot.readUnixAttributes(path);
+		}
+
+		/**
+		 * The modification time can be reset with utimensat, so the inode,
+		 * owner, mode and status change time, which user code can't set, are
+		 * compared as well. Files hard-linked from the template share their
+		 * status change time with every other jail, which changes it by
+		 * linking, so it's only compared for files that aren't shared; shared
+		 * files are read-only and owned by somebody else than the sandbox.
+		 */
+		public boolean matches(final Path path, final BasicFileAttributes attrs)
+				throws IOException {
+			if (this.directory || attrs.isDirectory()) {
+				return this.directory == attrs.isDirectory();
+			}
+			if (this.other || attrs.isOther()) {
+				// Pipes keep their data in the kernel, only their type matters
+				return this.other == attrs.isOther();
+			}
+			if (this.size != attrs.size()
+					|| !this.lastModified.equals(attrs.lastModifiedTime())) {
+				return false;
+			}
+			final Map<String, Object> current = JailSnapshot
+					.readUnixAttributes(path);
+			final Object links = this.unixAttributes.get("nlink");
+			final boolean shared = links instanceof Integer
+					&& (Integer) links > 1;
+			return Objects.equals(this.unixAttributes.get("ino"),
+					current.get("ino"))
+					&& Objects.equals(this.unixAttributes.get("uid"),
+							current.get("uid"))
+					&& Objects.equals(this.unixAttributes.get("mode"),
+							current.get("mode"))
+					&& (shared || Objects.equals(
+							this.unixAttributes.get("ctime"),
+							current.get("ctime")));
+		}
+	}
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(JailSnapshot.class);
+
+	private static Map<String, Object> readUnixAttributes(final Path path)
+			throws IOException {
+		try {
+			return Files.readAttributes(path, "unix:ino,uid,mode,nlink,ctime",
+					LinkOption.NOFOLLOW_LINKS);
+		} catch (final UnsupportedOperationException e) {
+			return Collections.emptyMap();
+		}
+	}
+
+	public static JailSnapshot take(final Path root) throws IOException {
+		final JailSnapshot snapshot = new JailSnapshot(root);
+		snapshot.record(root);
+		return snapshot;
+	}
+
+	private final Path root;
+
+	private final Map<Path, Entry> entries = new HashMap<>();
+
+	private JailSnapshot(final Path root) {
+		this.root = root;
+	}
+
+	public Path getRoot() {
+		return this.root;
+	}
+
+	/**
+	 * Adds a path (and everything below it) to the snapshot, so that it
+	 * survives future restores.
+	 */
+	public synchronized void record(final Path path) throws IOException {
+		FileAccess.walkFileTree(path, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(final Path dir,
+					final BasicFileAttributes attrs) throws IOException {
+				JailSnapshot.this.entries.put(
+						JailSnapshot.this.root.relativize(dir), new Entry(dir, attrs));
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(final Path file,
+					final BasicFileAttributes attrs) throws IOException {
+				JailSnapshot.this.entries.put(
+						JailSnapshot.this.root.relativize(file), new Entry(file, attrs));
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * Deletes everything that isn't in the snapshot.
+	 *
+	 * @return false if a recorded entry was modified or removed, in which case
+	 *         the jail can't be reused.
+	 */
+	public synchronized boolean restore() throws IOException {
+		final boolean[] clean = {
+			true
+		};
+		final int[] visited = {
+			0
+		};
+		FileAccess.walkFileTree(this.root, new SimpleFileVisitor<Path>() {
+			private boolean check(final Path path,
+					final BasicFileAttributes attrs) throws IOException {
+				final Entry entry = JailSnapshot.this.entries
+						.get(JailSnapshot.this.root.relativize(path));
+				if (entry == null) {
+					return false;
+				}
+				visited[0]++;
+				if (!entry.matches(path, attrs)) {
+					JailSnapshot.logger.debug("{} changed since the snapshot",
+							path);
+					clean[0] = false;
+				}
+				return true;
+			}
+
+			@Override
+			public FileVisitResult preVisitDirectory(final Path dir,
+					final BasicFileAttributes attrs) throws IOException {
+				if (this.check(dir, attrs)) {
+					return FileVisitResult.CONTINUE;
+				}
+				FileAccess.deleteDirectoryByWalking(dir);
+				return FileVisitResult.SKIP_SUBTREE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(final Path file,
+					final BasicFileAttributes attrs) throws IOException {
+				if (!this.check(file, attrs)) {
+					FileAccess.delete(file);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(final Path file,
+					final IOException e) throws IOException {
+				if (JailSnapshot.this.entries.containsKey(JailSnapshot.this.root
+						.relativize(file))) {
+					visited[0]++;
+					clean[0] = false;
+				} else {
+					FileAccess.deleteDirectoryByWalking(file);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return clean[0] && visited[0] == this.entries.size();
+	}
+}
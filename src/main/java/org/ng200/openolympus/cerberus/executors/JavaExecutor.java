@@ -25,27 +25,20 @@ package org.ng200.openolympus.cerberus.executors;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
-import java.nio.file.attribute.PosixFilePermission;
 import java.text.MessageFormat;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
-
-import org.apache.commons.exec.CommandLine;
-import org.apache.commons.exec.DefaultExecutor;
-import org.apache.commons.exec.ExecuteException;
-import org.apache.commons.exec.ExecuteWatchdog;
-import org.apache.commons.exec.PumpStreamHandler;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+
 import org.ng200.openolympus.FileAccess;
 import org.ng200.openolympus.cerberus.ExecutionResult;
 import org.ng200.openolympus.cerberus.ExecutionResult.ExecutionResultType;
 import org.ng200.openolympus.cerberus.SolutionJudge;
-import org.ng200.openolympus.cerberus.util.Lists;
+import org.ng200.openolympus.cerberus.util.ProcessLauncher;
 import org.ng200.openolympus.cerberus.util.TemporaryStorage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -53,11 +46,18 @@ import org.slf4j.LoggerFactory;
 public class JavaExecutor extends OpenOlympusWatchdogExecutor implements
 		Executor {
 
+	private transient SolutionJudge holder;
 	private transient TemporaryStorage storage;
+	private transient JailSnapshot snapshot;
+	private transient VerdictChannel verdictChannel;
+	private transient JavaProvisioningCache provisioningCache;
 	private long memoryLimit = 0;
 	private long cpuLimit = 0;
 	private long timeLimit = 0;
 	private long diskLimit = 0;
+	private boolean lowCommitHeap = false;
+	private long providedBytes = 0;
+	private Path inputFile = null;
 	private InputStream inputStream = null;
 	private OutputStream errorStream = null;
 	private OutputStream outputStream = null;
@@ -79,6 +79,17 @@ public class JavaExecutor extends OpenOlympusWatchdogExecutor implements
 		this.storage = storage;
 	}
 
+	/**
+	 * @return whether the heap is committed as it grows instead of up front
+	 */
+	public boolean isLowCommitHeap() {
+		return this.lowCommitHeap;
+	}
+
+	public void setLowCommitHeap(final boolean lowCommitHeap) {
+		this.lowCommitHeap = lowCommitHeap;
+	}
+
 	public List<String> getWriteFiles() {
 		return writeFiles;
 	}
@@ -97,133 +108,152 @@ public class JavaExecutor extends OpenOlympusWatchdogExecutor implements
 
 	public JavaExecutor(final SolutionJudge holder,
 			final List<String> writeFiles) throws IOException {
+		this(holder, writeFiles, new JavaProvisioningCache(holder));
+	}
+
+	public JavaExecutor(final SolutionJudge holder,
+			final List<String> writeFiles,
+			final JavaProvisioningCache provisioningCache) throws IOException {
+		this.holder = holder;
 		this.writeFiles = writeFiles;
-		this.storage = new TemporaryStorage(holder);
-		this.storage.getPath().resolve("chroot").toFile().mkdirs();
+		this.provisioningCache = provisioningCache;
+		this.createStorage();
 	}
 
-	private void buildPolicy(final Path chrootRoot, final Path policyFile)
-			throws IOException {
-		final StringBuilder stringBuilder = new StringBuilder();
-		stringBuilder.append("grant {\n");
-		stringBuilder
-				.append(this.readFiles
-						.stream()
-						.map(f -> MessageFormat
-								.format("  permission java.io.FilePermission \"{0}\", \"read\";\n",
-										chrootRoot.resolve(f)))
-						.collect(Collectors.joining("\n")));
-		stringBuilder.append("\n");
-		stringBuilder
-				.append(this.writeFiles
-						.stream()
-						.map(f -> MessageFormat
-								.format("  permission java.io.FilePermission \"{0}\", \"write\";\n",
-										chrootRoot.resolve(f)))
-						.collect(Collectors.joining("\n")));
-		stringBuilder.append("\n};");
-		final String policyString = stringBuilder.toString();
-
-		FileAccess.writeUTF8StringToFile(policyFile, policyString);
+	private void createStorage() throws IOException {
+		this.storage = new TemporaryStorage(this.holder);
+		this.storage.getPath().resolve("chroot").toFile().mkdirs();
+		this.verdictChannel = VerdictChannel.open(this.storage.getPath()
+				.resolve("chroot").resolve("verdict.txt"));
+		JavaProvisioningCache.makeAccessible(this.storage.getPath());
+		this.snapshot = JailSnapshot.take(this.storage.getPath());
 	}
 
 	@Override
 	public void close() throws IOException {
+		this.verdictChannel.close();
 		this.storage.close();
 	}
 
-	@Override
-	public ExecutionResult execute(final Path program) throws IOException {
-
+	/**
+	 * Replaces the watchdog's memory figure, which includes the JVM's own
+	 * overhead, with the peak heap usage measured from the GC log.
+	 */
+	private ExecutionResult accountMemory(final ExecutionResult result)
+			throws IOException {
 		final Path chrootRoot = this.storage.getPath().resolve("chroot");
+		final Path gcLog = chrootRoot.resolve("gc.log");
+
+		if (FileAccess.exists(gcLog)) {
+			final long heapPeak = GcLogParser.parse(FileAccess
+					.readUTF8String(gcLog));
+			JavaExecutor.logger.debug("Java heap peak: {}, resident peak: {}",
+					heapPeak, result.getMemoryPeak());
+			if (heapPeak >= 0) {
+				result.setMemoryPeak(heapPeak);
+			}
+		}
 
-		final Path chrootedProgram = chrootRoot.resolve(program.getFileName()
-				.toString());
+		if (FileAccess.exists(chrootRoot.resolve("outOfMemory"))) {
+			result.setResultType(ExecutionResultType.MEMORY_LIMIT);
+			result.setMemoryPeak(Math.max(result.getMemoryPeak(),
+					this.getMemoryLimit()));
+		} else if (result.getMemoryPeak() > this.getMemoryLimit()
+				&& result.getResultType() == ExecutionResultType.OK) {
+			result.setResultType(ExecutionResultType.MEMORY_LIMIT);
+		}
 
-		FileAccess.createDirectories(chrootedProgram);
-		FileAccess.copyDirectory(program, chrootedProgram,
-				StandardCopyOption.REPLACE_EXISTING,
-				StandardCopyOption.COPY_ATTRIBUTES);
+		return result;
+	}
 
-		final Path outOfMemoryFile = chrootRoot.resolve("outOfMemory");
+	private ProcessLauncher createLauncher(final Path program,
+			final SandboxIdentityPool.Identity identity,
+			final CpuCoreLeaseManager.Lease cores) throws IOException {
 
-		final Path policyFile = this.storage.getPath().resolve("olymp.policy");
-
-		try (Stream<Path> paths = FileAccess.walkPaths(storage.getPath())) {
-			paths.forEach(path -> {
-				try {
-					Files.setPosixFilePermissions(
-							path,
-							new HashSet<PosixFilePermission>(Lists.from(
-									PosixFilePermission.OWNER_EXECUTE,
-									PosixFilePermission.OWNER_READ,
-									PosixFilePermission.OWNER_WRITE,
-									PosixFilePermission.GROUP_EXECUTE,
-									PosixFilePermission.GROUP_READ,
-									PosixFilePermission.GROUP_WRITE,
-									PosixFilePermission.OTHERS_EXECUTE,
-									PosixFilePermission.OTHERS_READ)));
-				} catch (Exception e) {
-					throw new RuntimeException(e);
-				}
-			});
-		}
+		final Path chrootRoot = this.storage.getPath().resolve("chroot");
+
+		final JavaProvisioningCache.Installation installation = this.provisioningCache
+				.install(program);
+
+		final Path outOfMemoryFile = chrootRoot.resolve("outOfMemory");
 
-		this.buildPolicy(chrootRoot, policyFile);
+		final Path policyFile = this.provisioningCache.getPolicy(
+				this.readFiles, this.writeFiles);
 
-		final CommandLine commandLine = new CommandLine("sudo");
-		commandLine.addArgument("olympus_watchdog");
+		final List<String> command = new ArrayList<>();
+		command.add("sudo");
+		command.add("olympus_watchdog");
 
-		this.setUpOlrunnerLimits(commandLine);
+		this.setUpOlrunnerLimits(command, identity);
 
-		commandLine.addArgument("--security=0");
-		commandLine.addArgument("--jail=/");
+		command.add("--security=0");
+		command.add("--jail=/");
 
-		commandLine.addArgument("--");
+		command.add("--");
 
-		commandLine.addArgument("/usr/bin/java");
+		command.add(JavaRuntime.getDefault().getJavaExecutable().toString());
 
-		commandLine.addArgument("-classpath");
-		commandLine.addArgument(chrootedProgram.toAbsolutePath().toString());
-		commandLine.addArgument("-Djava.security.manager");
-		commandLine.addArgument("-Djava.security.policy="
+		command.add("-classpath");
+		command.add(installation.getClassPath().toAbsolutePath().toString());
+		if (installation.getClassDataArchive() != null) {
+			command.add("-XX:SharedArchiveFile="
+					+ installation.getClassDataArchive().toAbsolutePath()
+							.toString());
+			command.add("-Xshare:auto");
+			command.add("-Xlog:disable");
+		}
+		command.add("-D" + JavaProvisioningCache.SANDBOX_PROPERTY + "="
+				+ chrootRoot.toAbsolutePath().toString());
+		command.add("-Djava.security.manager");
+		command.add("-Djava.security.policy="
 				+ policyFile.toAbsolutePath().toString());
 
-		commandLine.addArgument("-Xmx" + this.getMemoryLimit());
-		commandLine.addArgument("-Xms" + this.getMemoryLimit());
+		command.add("-Xmx" + this.getMemoryLimit());
+		if (!this.lowCommitHeap) {
+			command.add("-Xms" + this.getMemoryLimit());
+		}
+		if (JavaRuntime.getDefault().getFeatureVersion() >= 9) {
+			command.add("-Xlog:gc,gc+heap+exit:file="
+					+ chrootRoot.resolve("gc.log").toAbsolutePath().toString()
+					+ ":none");
+		}
 
-		commandLine.addArgument(MessageFormat.format(
+		command.add(MessageFormat.format(
 				"-XX:OnOutOfMemoryError=touch {0}; echo \"\" > {0}",
-				outOfMemoryFile.toAbsolutePath().toString()), false);
+				outOfMemoryFile.toAbsolutePath().toString()));
 
-		commandLine.addArgument("Main");
+		command.add("Main");
 
-		final DefaultExecutor executor = new DefaultExecutor();
+		return new ProcessLauncher(cores.pin(command))
+				.setTimeout(this.getWatchdogTimeout())
+				.setWorkingDirectory(chrootRoot)
+				.setOutputStream(this.outputStream)
+				.setErrorStream(this.errorStream)
+				.setInputFile(this.inputFile)
+				.setInputStream(this.inputStream);
+	}
 
-		executor.setWatchdog(new ExecuteWatchdog(20000)); // 20 seconds for the
-		// sandbox to
-		// complete
-		executor.setWorkingDirectory(chrootRoot.toFile());
+	@Override
+	public ExecutionResult execute(final Path program) throws IOException {
+		return this.accountMemory(this.launchWatchdog(
+				(identity, cores) -> this.createLauncher(program, identity,
+						cores),
+				this.verdictChannel));
+	}
 
-		executor.setStreamHandler(new PumpStreamHandler(this.outputStream,
-				this.errorStream, this.inputStream));
-		try {
-			executor.execute(commandLine);
-		} catch (final IOException e) {
-			if (!e.getMessage().toLowerCase().equals("stream closed")) {
-				throw e;
+	@Override
+	public CompletableFuture<ExecutionResult> executeAsync(final Path program)
+			throws IOException {
+		return this.launchWatchdogAsync(
+				(identity, cores) -> this.createLauncher(program, identity,
+						cores),
+				this.verdictChannel).thenApply(result -> {
+			try {
+				return this.accountMemory(result);
+			} catch (final IOException e) {
+				throw new CompletionException(e);
 			}
-		}
-		final ExecutionResult readOlrunnerVerdict = this
-				.readOlrunnerVerdict(chrootRoot.resolve("verdict.txt"));
-
-		if (FileAccess.exists(outOfMemoryFile)) {
-			readOlrunnerVerdict.setResultType(ExecutionResultType.MEMORY_LIMIT);
-		}
-
-		readOlrunnerVerdict.setMemoryPeak(this.getMemoryLimit());
-
-		return readOlrunnerVerdict;
+		});
 	}
 
 	@Override
@@ -249,6 +279,11 @@ public class JavaExecutor extends OpenOlympusWatchdogExecutor implements
 				StandardCopyOption.COPY_ATTRIBUTES);
 	}
 
+	@Override
+	public Path getInputFile() {
+		return this.inputFile;
+	}
+
 	@Override
 	public InputStream getInputStream() {
 		return this.inputStream;
@@ -272,14 +307,30 @@ public class JavaExecutor extends OpenOlympusWatchdogExecutor implements
 	@Override
 	public void provideFile(final Path file) throws IOException {
 		JavaExecutor.logger.info("Providing file {}", file);
-		FileAccess.copy(
-				file,
-				this.storage.getPath().resolve("chroot")
-						.resolve(file.getFileName()),
-				StandardCopyOption.COPY_ATTRIBUTES);
+		final Path target = this.storage.getPath().resolve("chroot")
+				.resolve(file.getFileName());
+		final long size = FileAccess.readAttributes(file).size();
+		this.storage.reserve(size);
+		this.providedBytes += size;
+		FileAccess.copy(file, target, StandardCopyOption.COPY_ATTRIBUTES);
+		JavaProvisioningCache.makeAccessible(target);
 		this.readFiles.add(file.getFileName().toString());
 	}
 
+	@Override
+	public void reset() throws IOException {
+		this.readFiles.clear();
+		this.storage.release(this.providedBytes);
+		this.providedBytes = 0;
+		if (!this.snapshot.restore()) {
+			JavaExecutor.logger
+					.warn("Java sandbox {} was modified by the previous run, recreating it",
+							this.storage.getPath());
+			this.close();
+			this.createStorage();
+		}
+	}
+
 	@Override
 	public Executor setCpuLimit(final long cpuLimit) {
 		this.cpuLimit = cpuLimit;
@@ -298,6 +349,12 @@ public class JavaExecutor extends OpenOlympusWatchdogExecutor implements
 		return this;
 	}
 
+	@Override
+	public Executor setInputFile(final Path inputFile) {
+		this.inputFile = inputFile;
+		return this;
+	}
+
 	@Override
 	public Executor setInputStream(final InputStream inputStream) {
 		this.inputStream = inputStream;
@@ -323,24 +380,24 @@ public class JavaExecutor extends OpenOlympusWatchdogExecutor implements
 	}
 
 	@Override
-	protected void setUpOlrunnerLimits(final CommandLine commandLine)
-			throws ExecuteException, IOException {
-		commandLine.addArgument(MessageFormat.format("--memorylimit={0}",
+	protected void setUpOlrunnerLimits(final List<String> command,
+			final SandboxIdentityPool.Identity identity) {
+		command.add(MessageFormat.format("--memorylimit={0}",
 				Long.toString(this.getMemoryLimit())));
 
-		commandLine.addArgument(MessageFormat.format("--cpulimit={0}",
+		command.add(MessageFormat.format("--cpulimit={0}",
 				Long.toString(this.getCpuLimit())));
 
-		commandLine.addArgument(MessageFormat.format("--timelimit={0}",
+		command.add(MessageFormat.format("--timelimit={0}",
 				Long.toString(this.getTimeLimit())));
 
-		commandLine.addArgument(MessageFormat.format("--disklimit={0}",
+		command.add(MessageFormat.format("--disklimit={0}",
 				Long.toString(this.getDiskLimit())));
 
-		commandLine.addArgument(MessageFormat.format("--gid={0}",
-				OpenOlympusWatchdogExecutor.getGroupId()));
+		command.add(MessageFormat.format("--gid={0}",
+				Long.toString(identity.getGroupId())));
 
-		commandLine.addArgument(MessageFormat.format("--uid={0}",
-				OpenOlympusWatchdogExecutor.getUserId()));
+		command.add(MessageFormat.format("--uid={0}",
+				Long.toString(identity.getUserId())));
 	}
 }
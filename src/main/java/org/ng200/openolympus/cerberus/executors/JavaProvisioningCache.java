@@ -0,0 +1,208 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014-2015 Nick Guletskii
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ng200.openolympus.cerberus.executors;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.text.MessageFormat;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.ng200.openolympus.FileAccess;
+import org.ng200.openolympus.cerberus.SolutionJudge;
+import org.ng200.openolympus.cerberus.util.Lists;
+import org.ng200.openolympus.cerberus.util.TemporaryStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Everything a {@link JavaExecutor} needs that doesn't change between tests:
+ * the staged class tree, its class data archive and the security policies.
+ * One cache is shared by all Java executors of a judge, so this work is done
+ * once per solution rather than once per test.
+ */
+public class JavaProvisioningCache {
+
+	public static class Installation {
+		private final Path classPath;
+		private final Path classDataArchive;
+
+		public Installation(final Path classPath, final Path classDataArchive) {
+			this.classPath = classPath;
+			this.classDataArchive = classDataArchive;
+		}
+
+		/**
+		 * @return the class data archive, or null if the program has to run
+		 *         without one
+		 */
+		public Path getClassDataArchive() {
+			return this.classDataArchive;
+		}
+
+		public Path getClassPath() {
+			return this.classPath;
+		}
+	}
+
+	/**
+	 * The system property that policies resolve sandbox files against.
+	 */
+	public static final String SANDBOX_PROPERTY = "cerberus.sandbox";
+
+	private static final Set<PosixFilePermission> SANDBOX_PERMISSIONS = new HashSet<PosixFilePermission>(
+			Lists.from(PosixFilePermission.OWNER_EXECUTE,
+					PosixFilePermission.OWNER_READ,
+					PosixFilePermission.OWNER_WRITE,
+					PosixFilePermission.GROUP_EXECUTE,
+					PosixFilePermission.GROUP_READ,
+					PosixFilePermission.GROUP_WRITE,
+					PosixFilePermission.OTHERS_EXECUTE,
+					PosixFilePermission.OTHERS_READ));
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(JavaProvisioningCache.class);
+
+	/**
+	 * Makes a path and everything below it accessible to the sandboxed user.
+	 */
+	static void makeAccessible(final Path path) throws IOException {
+		try (Stream<Path> paths = FileAccess.walkPaths(path)) {
+			for (final Path child : paths.collect(Collectors.toList())) {
+				Files.setPosixFilePermissions(child,
+						JavaProvisioningCache.SANDBOX_PERMISSIONS);
+			}
+		}
+	}
+
+	private final SolutionJudge holder;
+	private TemporaryStorage storage = null;
+	private Path installedProgram = null;
+	private Installation installation = null;
+	private final Map<String, Path> policies = new HashMap<>();
+
+	public JavaProvisioningCache(final SolutionJudge holder) {
+		this.holder = holder;
+	}
+
+	private String buildPolicy(final Collection<String> readFiles,
+			final Collection<String> writeFiles) {
+		final StringBuilder stringBuilder = new StringBuilder();
+		stringBuilder.append("grant {\n");
+		stringBuilder.append(readFiles
+				.stream()
+				.sorted()
+				.map(f -> MessageFormat.format(
+						"  permission java.io.FilePermission \"$'{'{0}'}'$'{'/'}'{1}\", \"read\";\n",
+						JavaProvisioningCache.SANDBOX_PROPERTY, f))
+				.collect(Collectors.joining("\n")));
+		stringBuilder.append("\n");
+		stringBuilder.append(writeFiles
+				.stream()
+				.sorted()
+				.map(f -> MessageFormat.format(
+						"  permission java.io.FilePermission \"$'{'{0}'}'$'{'/'}'{1}\", \"write\";\n",
+						JavaProvisioningCache.SANDBOX_PROPERTY, f))
+				.collect(Collectors.joining("\n")));
+		stringBuilder.append("\n};");
+		return stringBuilder.toString();
+	}
+
+	/**
+	 * Returns a policy granting access to the given files in the sandbox
+	 * named by {@link #SANDBOX_PROPERTY}, writing it if no executor has
+	 * needed it yet.
+	 */
+	public synchronized Path getPolicy(final Collection<String> readFiles,
+			final Collection<String> writeFiles) throws IOException {
+		final String policy = this.buildPolicy(readFiles, writeFiles);
+		Path policyFile = this.policies.get(policy);
+		if (policyFile == null) {
+			policyFile = this.getStorage().resolve(
+					"olymp" + this.policies.size() + ".policy");
+			FileAccess.writeUTF8StringToFile(policyFile, policy);
+			JavaProvisioningCache.makeAccessible(policyFile);
+			this.policies.put(policy, policyFile);
+		}
+		return policyFile;
+	}
+
+	private Path getStorage() throws IOException {
+		if (this.storage == null) {
+			this.storage = new TemporaryStorage(this.holder);
+			JavaProvisioningCache.makeAccessible(this.storage.getPath());
+		}
+		return this.storage.getPath();
+	}
+
+	/**
+	 * Stages a compiled program outside of the executors' sandboxes. The
+	 * staged files are read-only for the sandboxed user, so they never have
+	 * to be restored.
+	 */
+	public synchronized Installation install(final Path program)
+			throws IOException {
+		if (program.equals(this.installedProgram)) {
+			return this.installation;
+		}
+
+		final Path stage = FileAccess.createTempDirectory(this.getStorage(),
+				"program");
+		final Path classes = stage.resolve(program.getFileName().toString());
+		JavaProvisioningCache.logger.info("Staging Java program {} in {}",
+				program, classes);
+		FileAccess.createDirectories(classes);
+		FileAccess.copyDirectory(program, classes,
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.COPY_ATTRIBUTES);
+
+		Path classPath = classes;
+		Path classDataArchive = null;
+
+		final JavaRuntime runtime = JavaRuntime.getDefault();
+		if (runtime.isClassDataSharingSupported()) {
+			final Path jar = stage.resolve("program.jar");
+			final Path archive = stage.resolve("program.jsa");
+			final List<String> classNames = runtime.createJar(classes, jar);
+			classPath = jar;
+			if (runtime.dumpClassDataArchive(jar, classNames, archive)) {
+				classDataArchive = archive;
+			}
+		}
+
+		JavaProvisioningCache.makeAccessible(stage);
+
+		this.installedProgram = program;
+		this.installation = new Installation(classPath, classDataArchive);
+		return this.installation;
+	}
+}
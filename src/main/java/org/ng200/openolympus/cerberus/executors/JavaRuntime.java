@@ -0,0 +1,260 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014-2015 Nick Guletskii
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ng200.openolympus.cerberus.executors;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.ng200.openolympus.FileAccess;
+import org.ng200.openolympus.cerberus.util.ProcessLauncher;
+import org.ng200.openolympus.cerberus.util.TemporaryStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The Java runtime that contestants' programs run on. By default this is a
+ * trimmed image linked with jlink from the installed JDK. Programs can be
+ * started from a class data sharing archive that already contains the JDK
+ * classes contestants usually need as well as the program's own classes.
+ */
+public class JavaRuntime {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(JavaRuntime.class);
+
+	/**
+	 * Classes that typical solutions load, in addition to the ones the JDK
+	 * loads at startup.
+	 */
+	private static final List<String> COMMON_CLASSES = Arrays.asList(
+			"java/io/BufferedReader", "java/io/BufferedWriter",
+			"java/io/InputStreamReader", "java/io/OutputStreamWriter",
+			"java/io/PrintWriter", "java/io/StreamTokenizer",
+			"java/math/BigDecimal", "java/math/BigInteger",
+			"java/util/ArrayDeque", "java/util/ArrayList", "java/util/Arrays",
+			"java/util/Collections", "java/util/HashMap",
+			"java/util/HashSet", "java/util/LinkedList",
+			"java/util/PriorityQueue", "java/util/Scanner",
+			"java/util/StringTokenizer", "java/util/TreeMap",
+			"java/util/TreeSet", "java/util/regex/Matcher",
+			"java/util/regex/Pattern");
+
+	private static final Pattern VERSION_PATTERN = Pattern
+			.compile("JAVA_VERSION=\"(?:1\\.)?(\\d+)");
+
+	private static JavaRuntime defaultRuntime = null;
+
+	public static synchronized JavaRuntime getDefault() throws IOException {
+		if (JavaRuntime.defaultRuntime == null) {
+			final String configuredHome = System
+					.getProperty("cerberus.java.home");
+			JavaRuntime runtime = new JavaRuntime(
+					configuredHome != null ? FileSystems.getDefault().getPath(
+							configuredHome) : FileSystems.getDefault()
+							.getPath("/usr/bin/java").toRealPath().getParent()
+							.getParent());
+			if (Boolean.parseBoolean(System.getProperty("cerberus.java.jlink",
+					"true")) && runtime.canLink()) {
+				try {
+					runtime = runtime.link(
+							TemporaryStorage.createTemporaryDirectory(
+									"cerberus-java-runtime").resolve("image"),
+							System.getProperty("cerberus.java.modules",
+									"java.base,java.desktop"));
+				} catch (final IOException e) {
+					JavaRuntime.logger.warn(
+							"Couldn't link a Java runtime image, using {}: {}",
+							runtime.getHome(), e);
+				}
+			}
+			JavaRuntime.defaultRuntime = runtime;
+		}
+		return JavaRuntime.defaultRuntime;
+	}
+
+	private final Path home;
+
+	private final int featureVersion;
+
+	private List<String> classList = null;
+
+	public JavaRuntime(final Path home) throws IOException {
+		this.home = home;
+		this.featureVersion = JavaRuntime.readFeatureVersion(home);
+		JavaRuntime.logger.info("Java runtime {}, version {}", home,
+				this.featureVersion);
+	}
+
+	private static int readFeatureVersion(final Path home) throws IOException {
+		final Path release = home.resolve("release");
+		if (!FileAccess.exists(release)) {
+			return -1;
+		}
+		final Matcher matcher = JavaRuntime.VERSION_PATTERN.matcher(FileAccess
+				.readUTF8String(release));
+		return matcher.find() ? Integer.parseInt(matcher.group(1)) : -1;
+	}
+
+	public boolean canLink() {
+		return this.featureVersion >= 9
+				&& FileAccess.isExecutable(this.home.resolve("bin").resolve(
+						"jlink"));
+	}
+
+	/**
+	 * Packs the classes under a directory into a jar: class data sharing
+	 * can't archive classes that are loaded from directories.
+	 *
+	 * @return the names of the packed classes, in class list format
+	 */
+	public List<String> createJar(final Path classes, final Path jar)
+			throws IOException {
+		final List<String> names = new ArrayList<>();
+		try (OutputStream out = FileAccess.newBufferedOutputStream(jar);
+				JarOutputStream jarStream = new JarOutputStream(out);
+				Stream<Path> paths = FileAccess.walkPaths(classes)) {
+			for (final Path path : paths.filter(FileAccess::isFile).collect(
+					Collectors.toList())) {
+				final String name = classes.relativize(path).toString();
+				jarStream.putNextEntry(new JarEntry(name));
+				jarStream.write(FileAccess.readAllBytes(path));
+				jarStream.closeEntry();
+				if (name.endsWith(".class")) {
+					names.add(name.substring(0, name.length()
+							- ".class".length()));
+				}
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Dumps a class data sharing archive containing the JDK's startup
+	 * classes, {@link #COMMON_CLASSES} and the given application classes.
+	 * Static initialisers aren't run while dumping, so this doesn't execute
+	 * any of the program's code.
+	 *
+	 * @return false if the archive couldn't be created
+	 */
+	public boolean dumpClassDataArchive(final Path jar,
+			final List<String> applicationClasses, final Path archive) {
+		try {
+			final List<String> classes = new ArrayList<>(this.getClassList());
+			classes.addAll(applicationClasses);
+			final Path classListFile = archive.resolveSibling(archive
+					.getFileName() + ".classlist");
+			FileAccess.writeUTF8StringToFile(classListFile,
+					String.join("\n", classes) + "\n");
+
+			new ProcessLauncher(this.getJavaExecutable().toString(),
+					"-Xshare:dump", "-Xlog:disable",
+					"-XX:SharedClassListFile=" + classListFile,
+					"-XX:SharedArchiveFile=" + archive, "-classpath",
+					jar.toString()).setTimeout(60000).execute();
+			return FileAccess.exists(archive);
+		} catch (final IOException e) {
+			JavaRuntime.logger.warn("Couldn't create class data archive: {}",
+					e);
+			return false;
+		}
+	}
+
+	private synchronized List<String> getClassList() throws IOException {
+		if (this.classList == null) {
+			final List<String> classes = new ArrayList<>();
+			final Path defaultClassList = this.home.resolve("lib").resolve(
+					"classlist");
+			if (FileAccess.exists(defaultClassList)) {
+				for (final String line : FileAccess.readUTF8String(
+						defaultClassList).split("\n")) {
+					// Skip comments and lambda form entries
+					if (!line.isEmpty() && !line.startsWith("#")
+							&& !line.startsWith("@")) {
+						classes.add(line);
+					}
+				}
+			}
+			classes.addAll(JavaRuntime.COMMON_CLASSES);
+			this.classList = classes;
+		}
+		return this.classList;
+	}
+
+	public int getFeatureVersion() {
+		return this.featureVersion;
+	}
+
+	public Path getHome() {
+		return this.home;
+	}
+
+	public Path getJavaExecutable() {
+		return this.home.resolve("bin").resolve("java");
+	}
+
+	/**
+	 * Application class data sharing works without unlocking flags since
+	 * Java 11.
+	 */
+	public boolean isClassDataSharingSupported() {
+		return this.featureVersion >= 11;
+	}
+
+	/**
+	 * Links a trimmed runtime image containing only the given modules, and
+	 * gives it a default class data sharing archive.
+	 */
+	public JavaRuntime link(final Path target, final String modules)
+			throws IOException {
+		JavaRuntime.logger.info("Linking Java runtime image with {} into {}",
+				modules, target);
+		new ProcessLauncher(this.home.resolve("bin").resolve("jlink")
+				.toString(), "--add-modules", modules, "--strip-debug",
+				"--no-header-files", "--no-man-pages", "--output",
+				target.toString()).setTimeout(300000).execute();
+		final Path classList = this.home.resolve("lib").resolve("classlist");
+		if (FileAccess.exists(classList)
+				&& !FileAccess.exists(target.resolve("lib")
+						.resolve("classlist"))) {
+			FileAccess.copy(classList, target.resolve("lib").resolve("classlist"));
+		}
+		final JavaRuntime image = new JavaRuntime(target);
+		if (image.featureVersion >= 12) {
+			new ProcessLauncher(image.getJavaExecutable().toString(),
+					"-Xshare:dump", "-Xlog:disable").setTimeout(60000)
+					.execute();
+		}
+		return image;
+	}
+}
@@ -0,0 +1,359 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014-2015 Nick Guletskii
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ng200.openolympus.cerberus.executors;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.ng200.openolympus.FileAccess;
+import org.ng200.openolympus.cerberus.ExecutionResult;
+import org.ng200.openolympus.cerberus.util.ProcessLauncher;
+import org.ng200.openolympus.cerberus.util.TemporaryStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs programs in a jail using unprivileged Linux namespaces (user, mount,
+ * PID, network, IPC and UTS) and resource limits instead of sudo and
+ * olympus_watchdog. A small runner binary applies the limits, chroots into
+ * the jail and reports a verdict in the watchdog's format.
+ */
+public class NamespaceExecutor implements Executor {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(NamespaceExecutor.class);
+
+	static final List<String> UNSHARE_COMMAND = Arrays.asList(
+			"unshare", "--user", "--map-root-user", "--mount", "--pid",
+			"--net", "--ipc", "--uts", "--fork", "--kill-child", "--");
+
+	private static Path runner = null;
+
+	private static Path buildRunner() throws IOException {
+		final Path directory = TemporaryStorage
+				.createTemporaryDirectory("cerberus-runner");
+		final Path source = directory.resolve("namespace_runner.c");
+		final Path binary = directory.resolve("namespace_runner");
+		try (InputStream in = NamespaceExecutor.class
+				.getResourceAsStream("namespace_runner.c")) {
+			if (in == null) {
+				throw new IOException("The namespace runner's source is missing");
+			}
+			FileAccess.copy(in, source);
+		}
+
+		NamespaceExecutor.logger.info("Building namespace runner in {}",
+				directory);
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try {
+			new ProcessLauncher("gcc", "-O2", "-o", binary.toString(),
+					source.toString()).setOutputStream(output)
+					.setRedirectErrorStream(true).setTimeout(20000).execute();
+		} catch (final ProcessLauncher.ExitValueException e) {
+			throw new IOException("Couldn't build the namespace runner: "
+					+ output.toString(StandardCharsets.UTF_8.name()), e);
+		}
+		return binary;
+	}
+
+	/**
+	 * @return the runner binary: either the one named by the
+	 *         cerberus.namespaceRunner property, or one built from the bundled
+	 *         source on first use
+	 */
+	public static synchronized Path getRunner() throws IOException {
+		if (NamespaceExecutor.runner == null) {
+			final String configured = System
+					.getProperty("cerberus.namespaceRunner");
+			if (configured != null) {
+				NamespaceExecutor.runner = FileSystems.getDefault().getPath(
+						configured);
+			} else {
+				NamespaceExecutor.runner = NamespaceExecutor.buildRunner();
+			}
+		}
+		return NamespaceExecutor.runner;
+	}
+
+	private transient JailPool jailPool;
+	private transient JailPool.Jail jail;
+	private transient Path installedProgram = null;
+	private transient VerdictChannel verdictChannel;
+	private long memoryLimit = 0;
+	private long cpuLimit = 0;
+	private long timeLimit = 0;
+	private long diskLimit = 0;
+	private Path inputFile = null;
+	private InputStream inputStream = null;
+	private OutputStream errorStream = null;
+	private OutputStream outputStream = null;
+
+	public NamespaceExecutor() {
+		// Serialization constructor
+	}
+
+	public NamespaceExecutor(final JailPool jailPool) throws IOException {
+		this.jailPool = jailPool;
+		this.leaseJail();
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.verdictChannel.close();
+		this.jail.close();
+	}
+
+	private ProcessLauncher createLauncher(final Path program,
+			final CpuCoreLeaseManager.Lease cores) throws IOException {
+		final Path chrootedProgram = this.jail.getChroot().resolve(
+				program.getFileName().toString());
+		if (!program.equals(this.installedProgram)) {
+			NamespaceExecutor.logger.debug("Copying program into jail");
+			chrootedProgram.getParent().toFile().mkdirs();
+			FileAccess.copy(program, chrootedProgram,
+					StandardCopyOption.COPY_ATTRIBUTES,
+					StandardCopyOption.REPLACE_EXISTING);
+			this.jail.getSnapshot().record(chrootedProgram);
+			this.installedProgram = program;
+		}
+
+		final List<String> command = new ArrayList<>(
+				NamespaceExecutor.UNSHARE_COMMAND);
+		command.add(NamespaceExecutor.getRunner().toAbsolutePath().toString());
+		command.add(this.jail.getChroot().toAbsolutePath().toString());
+		command.add(this.verdictChannel.getPath().toAbsolutePath().toString());
+		command.add(Long.toString(this.cpuLimit));
+		command.add(Long.toString(this.timeLimit));
+		command.add(Long.toString(this.memoryLimit));
+		command.add(Long.toString(this.diskLimit));
+		command.add("--");
+		command.add("/"
+				+ this.jail.getChroot().relativize(chrootedProgram).toString());
+
+		return new ProcessLauncher(cores.pin(command))
+				.setTimeout(this.getWatchdogTimeout())
+				.setWorkingDirectory(this.jail.getPath())
+				.setOutputStream(this.outputStream)
+				.setErrorStream(this.errorStream)
+				.setInputFile(this.inputFile)
+				.setInputStream(this.inputStream);
+	}
+
+	@Override
+	public ExecutionResult execute(final Path program) throws IOException {
+		try (CpuCoreLeaseManager.Lease cores = CpuCoreLeaseManager
+				.getDefault().lease()) {
+			final ProcessLauncher launcher = this
+					.createLauncher(program, cores);
+			NamespaceExecutor.logger.debug("Executing in namespaces on {}: {}",
+					cores, launcher);
+			this.verdictChannel.prepare();
+			IOException failure = null;
+			try {
+				launcher.execute();
+			} catch (final ProcessLauncher.ExitValueException e) {
+				failure = e;
+			}
+			return this.verdictChannel.readAfter(launcher, failure);
+		}
+	}
+
+	@Override
+	public CompletableFuture<ExecutionResult> executeAsync(final Path program)
+			throws IOException {
+		final CpuCoreLeaseManager.Lease cores = CpuCoreLeaseManager
+				.getDefault().lease();
+		final ProcessLauncher launcher;
+		try {
+			launcher = this.createLauncher(program, cores);
+			NamespaceExecutor.logger.debug(
+					"Executing in namespaces asynchronously on {}: {}", cores,
+					launcher);
+			this.verdictChannel.prepare();
+		} catch (final IOException | RuntimeException e) {
+			cores.close();
+			throw e;
+		}
+		return launcher.executeAsync().handle(
+				(exitValue, throwable) -> {
+					cores.close();
+					final Throwable cause = throwable instanceof CompletionException ? throwable
+							.getCause() : throwable;
+					if (cause != null && !(cause instanceof IOException)) {
+						throw new CompletionException(cause);
+					}
+					try {
+						return this.verdictChannel.readAfter(launcher,
+								(IOException) cause);
+					} catch (final IOException e) {
+						throw new CompletionException(e);
+					}
+				});
+	}
+
+	@Override
+	public long getCpuLimit() {
+		return this.cpuLimit;
+	}
+
+	@Override
+	public long getDiskLimit() {
+		return this.diskLimit;
+	}
+
+	@Override
+	public OutputStream getErrorStream() {
+		return this.errorStream;
+	}
+
+	@Override
+	public void getFile(final String name, final Path destination)
+			throws IOException {
+		FileAccess.copy(this.jail.getChroot().resolve(name), destination,
+				StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	@Override
+	public Path getInputFile() {
+		return this.inputFile;
+	}
+
+	@Override
+	public InputStream getInputStream() {
+		return this.inputStream;
+	}
+
+	public JailPool.Jail getJail() {
+		return this.jail;
+	}
+
+	@Override
+	public long getMemoryLimit() {
+		return this.memoryLimit;
+	}
+
+	@Override
+	public OutputStream getOutputStream() {
+		return this.outputStream;
+	}
+
+	@Override
+	public long getTimeLimit() {
+		return this.timeLimit;
+	}
+
+	private void leaseJail() throws IOException {
+		NamespaceExecutor.logger.debug("Leasing jail from pool: {}",
+				this.jailPool);
+		this.jail = this.jailPool.lease();
+		this.installedProgram = null;
+		this.verdictChannel = VerdictChannel.open(this.jail.getPath().resolve(
+				"verdict.txt"));
+		if (FileAccess.exists(this.verdictChannel.getPath(),
+				LinkOption.NOFOLLOW_LINKS)) {
+			this.jail.getSnapshot().record(this.verdictChannel.getPath());
+		}
+	}
+
+	@Override
+	public void provideFile(final Path file) throws IOException {
+		NamespaceExecutor.logger.info("Providing file {}", file);
+		FileAccess.copy(file, this.jail.getChroot()
+				.resolve(file.getFileName()));
+	}
+
+	@Override
+	public void reset() throws IOException {
+		if (!this.jail.getSnapshot().restore()) {
+			NamespaceExecutor.logger
+					.warn("Jail {} was modified by the previous run, leasing a new one",
+							this.jail.getPath());
+			this.close();
+			this.leaseJail();
+		}
+	}
+
+	@Override
+	public NamespaceExecutor setCpuLimit(final long cpuLimit) {
+		this.cpuLimit = cpuLimit;
+		return this;
+	}
+
+	@Override
+	public NamespaceExecutor setDiskLimit(final long diskLimit) {
+		this.diskLimit = diskLimit;
+		return this;
+	}
+
+	@Override
+	public NamespaceExecutor setErrorStream(final OutputStream errorStream) {
+		this.errorStream = errorStream;
+		return this;
+	}
+
+	@Override
+	public NamespaceExecutor setInputFile(final Path inputFile) {
+		this.inputFile = inputFile;
+		return this;
+	}
+
+	@Override
+	public NamespaceExecutor setInputStream(final InputStream inputStream) {
+		this.inputStream = inputStream;
+		return this;
+	}
+
+	public void setJail(final JailPool.Jail jail) {
+		this.jail = jail;
+	}
+
+	@Override
+	public NamespaceExecutor setMemoryLimit(final long memoryLimit) {
+		this.memoryLimit = memoryLimit;
+		return this;
+	}
+
+	@Override
+	public NamespaceExecutor setOutputStream(final OutputStream outputStream) {
+		this.outputStream = outputStream;
+		return this;
+	}
+
+	@Override
+	public NamespaceExecutor setTimeLimit(final long timeLimit) {
+		this.timeLimit = timeLimit;
+		return this;
+	}
+}
@@ -23,165 +23,127 @@
 package org.ng200.openolympus.cerberus.executors;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.text.MessageFormat;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
-import org.apache.commons.exec.CommandLine;
-import org.apache.commons.exec.DefaultExecutor;
-import org.apache.commons.exec.ExecuteException;
-import org.apache.commons.exec.ExecuteWatchdog;
-import org.apache.commons.exec.PumpStreamHandler;
-import org.apache.commons.io.output.ByteArrayOutputStream;
-import org.ng200.openolympus.FileAccess;
 import org.ng200.openolympus.cerberus.ExecutionResult;
+import org.ng200.openolympus.cerberus.util.ProcessLauncher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public abstract class OpenOlympusWatchdogExecutor implements Executor {
 
-	private static boolean alreadyEnsuredUserExists;
-
-	private static String callNativeId(boolean group) throws IOException {
-		OpenOlympusWatchdogExecutor.ensureUserAndGroupExists();
-
-		final CommandLine commandLine = new CommandLine("id");
-		commandLine.addArgument(group ? "-g" : "-u");
-		commandLine.addArgument("olympuswatchdogchild");
-
-		final DefaultExecutor executor = new DefaultExecutor();
-
-		final ByteArrayOutputStream out = new ByteArrayOutputStream();
-
-		executor.setStreamHandler(new PumpStreamHandler(out));
-
-		executor.setWatchdog(new ExecuteWatchdog(1000));
-
-		try {
-			executor.execute(commandLine);
-
-			return out.toString(StandardCharsets.UTF_8.name());
-		} catch (final ExecuteException e) {
-			throw new ExecuteException(
-					"Couldn't find user/group id of the olympuswatchdogchild user/group: does it even exist?",
-					e.getExitValue(), e);
-		}
+	private static final Logger logger = LoggerFactory
+			.getLogger(OpenOlympusWatchdogExecutor.class);
+
+	/**
+	 * Builds the watchdog invocation for a run that uses the given identity
+	 * and cores.
+	 */
+	@FunctionalInterface
+	protected static interface WatchdogCommand {
+		public ProcessLauncher create(SandboxIdentityPool.Identity identity,
+				CpuCoreLeaseManager.Lease cores) throws IOException;
 	}
 
-	private static void ensureUserAndGroupExists() throws IOException {
-		if (alreadyEnsuredUserExists)
-			return;
-		final CommandLine commandLine = new CommandLine("sudo");
-		commandLine.addArgument("useradd");
-		commandLine.addArgument("-U");
-		commandLine.addArgument("-M"); // Don't create home directory
-		commandLine.addArgument("-s");
-		commandLine.addArgument("/bin/false");
-		commandLine.addArgument("olympuswatchdogchild");
-
-		final DefaultExecutor executor = new DefaultExecutor();
-		executor.setExitValues(new int[] {
-				0, /* Added user */
-				9
-		/* User already exists */
-		});
-
-		executor.setWatchdog(new ExecuteWatchdog(1000));
-
-		try {
-			executor.execute(commandLine);
-			alreadyEnsuredUserExists = true;
-		} catch (final ExecuteException e) {
-			throw new ExecuteException(
-					"Couldn't find user/group id of the olympuswatchdogchild user/group: does it even exist?",
-					e.getExitValue(), e);
-		}
+	public OpenOlympusWatchdogExecutor() {
+		super();
 	}
 
-	protected static String getGroupId() throws ExecuteException, IOException {
-		if (OpenOlympusWatchdogExecutor.groupId == null) {
-			OpenOlympusWatchdogExecutor.groupId = OpenOlympusWatchdogExecutor
-					.callNativeId(true);
+	private ExecutionResult interpretWatchdogExit(
+			final ProcessLauncher launcher,
+			final VerdictChannel verdictChannel, final IOException failure)
+			throws IOException {
+		try {
+			return verdictChannel.readAfter(launcher, failure);
+		} catch (final IOException e) {
+			OpenOlympusWatchdogExecutor.logger.info("Execution failed: {}", e);
+			throw e;
 		}
-		return OpenOlympusWatchdogExecutor.groupId;
 	}
 
-	protected static String getUserId() throws ExecuteException, IOException {
-		if (OpenOlympusWatchdogExecutor.userId == null) {
-			OpenOlympusWatchdogExecutor.userId = OpenOlympusWatchdogExecutor
-					.callNativeId(false);
+	protected ExecutionResult launchWatchdog(final WatchdogCommand command,
+			final VerdictChannel verdictChannel) throws IOException {
+		try (SandboxIdentityPool.Identity identity = SandboxIdentityPool
+				.getDefault().lease();
+				CpuCoreLeaseManager.Lease cores = CpuCoreLeaseManager
+						.getDefault().lease()) {
+			final ProcessLauncher launcher = command.create(identity, cores);
+			OpenOlympusWatchdogExecutor.logger.debug(
+					"Executing in sandbox as {} on {}: {}", identity, cores,
+					launcher);
+			verdictChannel.prepare();
+			IOException failure = null;
+			try {
+				launcher.execute();
+			} catch (final ProcessLauncher.ExitValueException e) {
+				failure = e;
+			}
+			return this.interpretWatchdogExit(launcher, verdictChannel,
+					failure);
 		}
-		return OpenOlympusWatchdogExecutor.userId;
 	}
 
-	private static String userId = null;
-
-	private static String groupId = null;
-
-	public OpenOlympusWatchdogExecutor() {
-		super();
-	}
-
-	protected ExecutionResult readOlrunnerVerdict(final Path verdictFile)
-			throws IOException, IllegalStateException, NumberFormatException {
-		final String text = FileAccess.readUTF8String(verdictFile).trim();
-
-		/*
-		 * Capture one of the following: $1 $1($2) $1($2,$3,$4)
-		 */
-
-		final Pattern pattern = Pattern
-				.compile("([A-Za-z_]+)(?:\\((\\d+)(?:,\\s*(\\d+),\\s*(\\d+))?\\))?");
-
-		final Matcher matcher = pattern.matcher(text);
-		if (!matcher.matches()) {
-			throw new IllegalStateException(
-					"The verdict file doesn't contain a vaildly formatted string! Got this: \""
-							+ text + "\"");
-		}
-		final String resultTypeString = matcher.group(1);
-		final long realTime = Integer.valueOf(matcher.group(2));
-		final long cpuTime = Integer.valueOf(matcher.group(3));
-		final long memoryTime = Integer.valueOf(matcher.group(4));
-
-		switch (resultTypeString) {
-		case "OK":
-		case "MEMORY_LIMIT":
-		case "OUTPUT_LIMIT":
-		case "TIME_LIMIT":
-		case "RUNTIME_ERROR":
-		case "INTERNAL_ERROR":
-		case "ABNORMAL_TERMINATION":
-		case "SECURITY_VIOLATION":
-			return new ExecutionResult(
-					ExecutionResult.ExecutionResultType
-							.valueOf(resultTypeString),
-					realTime, cpuTime, memoryTime, -1);
-		default:
-			return new ExecutionResult(
-					ExecutionResult.ExecutionResultType
-							.valueOf(resultTypeString),
-					-1, -1, -1, -1);
+	protected CompletableFuture<ExecutionResult> launchWatchdogAsync(
+			final WatchdogCommand command, final VerdictChannel verdictChannel)
+			throws IOException {
+		final SandboxIdentityPool.Identity identity = SandboxIdentityPool
+				.getDefault().lease();
+		CpuCoreLeaseManager.Lease cores = null;
+		final ProcessLauncher launcher;
+		try {
+			cores = CpuCoreLeaseManager.getDefault().lease();
+			launcher = command.create(identity, cores);
+			OpenOlympusWatchdogExecutor.logger.debug(
+					"Executing in sandbox asynchronously as {} on {}: {}",
+					identity, cores, launcher);
+			verdictChannel.prepare();
+		} catch (final IOException | RuntimeException e) {
+			identity.close();
+			if (cores != null) {
+				cores.close();
+			}
+			throw e;
 		}
+		final CpuCoreLeaseManager.Lease leasedCores = cores;
+		return launcher.executeAsync().handle(
+				(exitValue, throwable) -> {
+					identity.close();
+					leasedCores.close();
+					final Throwable cause = throwable instanceof CompletionException ? throwable
+							.getCause() : throwable;
+					if (cause != null && !(cause instanceof IOException)) {
+						throw new CompletionException(cause);
+					}
+					try {
+						return this.interpretWatchdogExit(launcher,
+								verdictChannel, (IOException) cause);
+					} catch (final IOException e) {
+						throw new CompletionException(e);
+					}
+				});
 	}
 
-	protected void setUpOlrunnerLimits(final CommandLine commandLine)
-			throws ExecuteException, IOException {
-		commandLine.addArgument(MessageFormat.format("--memorylimit={0}",
+	protected void setUpOlrunnerLimits(final List<String> command,
+			final SandboxIdentityPool.Identity identity) {
+		command.add(MessageFormat.format("--memorylimit={0}",
 				Long.toString(this.getMemoryLimit())));
 
-		commandLine.addArgument(MessageFormat.format("--cpulimit={0}",
+		command.add(MessageFormat.format("--cpulimit={0}",
 				Long.toString(this.getCpuLimit())));
 
-		commandLine.addArgument(MessageFormat.format("--timelimit={0}",
+		command.add(MessageFormat.format("--timelimit={0}",
 				Long.toString(this.getTimeLimit())));
 
-		commandLine.addArgument(MessageFormat.format("--disklimit={0}",
+		command.add(MessageFormat.format("--disklimit={0}",
 				Long.toString(this.getDiskLimit())));
 
-		commandLine.addArgument(MessageFormat.format("--gid={0}",
-				OpenOlympusWatchdogExecutor.getGroupId()));
-		commandLine.addArgument(MessageFormat.format("--uid={0}",
-				OpenOlympusWatchdogExecutor.getUserId()));
+		command.add(MessageFormat.format("--gid={0}",
+				Long.toString(identity.getGroupId())));
+		command.add(MessageFormat.format("--uid={0}",
+				Long.toString(identity.getUserId())));
 	}
 }
\ No newline at end of file
@@ -0,0 +1,130 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014-2015 Nick Guletskii
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ng200.openolympus.cerberus.executors;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+
+import org.ng200.openolympus.FileAccess;
+import org.ng200.openolympus.cerberus.ExecutionResult;
+import org.ng200.openolympus.cerberus.util.ProcessLauncher;
+
+/**
+ * Receives verdicts through a named pipe that stays in place between runs,
+ * so that no file has to be created, read and deleted for every test. The
+ * pipe is kept open for both reading and writing, so neither side blocks
+ * when opening it, and whatever the watchdog wrote stays in the pipe's
+ * buffer until it is read.
+ */
+public class PipeVerdictChannel implements VerdictChannel {
+
+	private static final int MAXIMUM_VERDICT_LENGTH = 4096;
+
+	private final Path path;
+	private RandomAccessFile pipe;
+	private FileInputStream input;
+
+	public PipeVerdictChannel(final Path path) throws IOException {
+		this.path = path;
+		this.open();
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.pipe.close();
+		if (FileAccess.exists(this.path, LinkOption.NOFOLLOW_LINKS)) {
+			FileAccess.delete(this.path);
+		}
+	}
+
+	@Override
+	public Path getPath() {
+		return this.path;
+	}
+
+	@Override
+	public boolean hasVerdict() throws IOException {
+		if (!this.isPipe()) {
+			return FileAccess.exists(this.path);
+		}
+		return this.input.available() > 0;
+	}
+
+	private boolean isPipe() throws IOException {
+		return FileAccess.exists(this.path, LinkOption.NOFOLLOW_LINKS)
+				&& FileAccess.readAttributes(this.path,
+						LinkOption.NOFOLLOW_LINKS).isOther();
+	}
+
+	private void open() throws IOException {
+		new ProcessLauncher("mkfifo", this.path.toAbsolutePath().toString())
+				.setTimeout(1000).execute();
+		this.pipe = new RandomAccessFile(this.path.toFile(), "rw");
+		this.input = new FileInputStream(this.pipe.getFD());
+	}
+
+	@Override
+	public void prepare() throws IOException {
+		if (!this.isPipe()) {
+			this.reopen();
+			return;
+		}
+		final byte[] buffer = new byte[PipeVerdictChannel.MAXIMUM_VERDICT_LENGTH];
+		while (this.input.available() > 0) {
+			this.input.read(buffer);
+		}
+	}
+
+	@Override
+	public ExecutionResult read() throws IOException {
+		if (!this.isPipe()) {
+			// Something has replaced the pipe with a regular file
+			final String text = FileAccess.readUTF8String(this.path);
+			this.reopen();
+			return VerdictParser.parse(text);
+		}
+		final byte[] buffer = new byte[PipeVerdictChannel.MAXIMUM_VERDICT_LENGTH];
+		int length = 0;
+		int available;
+		while ((available = this.input.available()) > 0
+				&& length < buffer.length) {
+			length += this.input.read(buffer, length,
+					Math.min(available, buffer.length - length));
+		}
+		if (length == 0) {
+			throw new IOException("The watchdog didn't write a verdict to "
+					+ this.path);
+		}
+		return VerdictParser.parse(new String(buffer, 0, length,
+				StandardCharsets.UTF_8));
+	}
+
+	private void reopen() throws IOException {
+		this.close();
+		this.open();
+	}
+}
@@ -0,0 +1,244 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014-2015 Nick Guletskii
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ng200.openolympus.cerberus.executors;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.ng200.openolympus.FileAccess;
+import org.ng200.openolympus.cerberus.util.ProcessLauncher;
+import org.ng200.openolympus.cerberus.util.ProcessTree;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A fixed set of unprivileged users that sandboxed programs run as. Each run
+ * leases its own identity, so that concurrent runs can't signal, trace or
+ * otherwise interfere with each other's processes. Whatever still runs as an
+ * identity when it's returned is killed, so that nothing a run has left
+ * behind shares its user with the next run.
+ */
+public class SandboxIdentityPool {
+
+	public static class Identity implements AutoCloseable {
+		private final SandboxIdentityPool pool;
+		private final String name;
+		private final long userId;
+		private final long groupId;
+		private final AtomicBoolean leased = new AtomicBoolean();
+
+		private Identity(final SandboxIdentityPool pool, final String name,
+				final long userId, final long groupId) {
+			this.pool = pool;
+			this.name = name;
+			this.userId = userId;
+			this.groupId = groupId;
+		}
+
+		@Override
+		public void close() {
+			if (this.leased.compareAndSet(true, false)) {
+				this.pool.release(this);
+			}
+		}
+
+		public long getGroupId() {
+			return this.groupId;
+		}
+
+		public String getName() {
+			return this.name;
+		}
+
+		public long getUserId() {
+			return this.userId;
+		}
+
+		@Override
+		public String toString() {
+			return this.name + "(" + this.userId + ":" + this.groupId + ")";
+		}
+	}
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(SandboxIdentityPool.class);
+
+	private static final String BASE_USER_NAME = "olympuswatchdogchild";
+
+	private static final Path PASSWD = FileSystems.getDefault().getPath(
+			"/etc/passwd");
+
+	private static SandboxIdentityPool defaultPool = null;
+
+	private static void createUser(final String name) throws IOException {
+		SandboxIdentityPool.logger.info("Creating sandbox user {}", name);
+		final ProcessLauncher launcher = new ProcessLauncher("sudo", "useradd",
+				"-U", "-M" /* Don't create home directory */, "-s",
+				"/bin/false", name);
+		launcher.setExitValues(0, /* Added user */
+				9 /* User already exists */);
+		launcher.setTimeout(1000);
+
+		try {
+			launcher.execute();
+		} catch (final ProcessLauncher.ExitValueException e) {
+			throw new IOException("Couldn't create the " + name + " user", e);
+		}
+	}
+
+	/**
+	 * By default, there is an identity for each run that the node executes
+	 * at once, so that identities don't serialise runs on their own.
+	 */
+	public static synchronized SandboxIdentityPool getDefault()
+			throws IOException {
+		if (SandboxIdentityPool.defaultPool == null) {
+			SandboxIdentityPool.defaultPool = new SandboxIdentityPool(
+					Integer.getInteger("cerberus.sandbox.identities",
+							CpuCoreLeaseManager.getDefault().getConcurrency()));
+		}
+		return SandboxIdentityPool.defaultPool;
+	}
+
+	/**
+	 * The first identity keeps the historical user name, so that existing
+	 * installations keep working with a pool of one.
+	 */
+	public static String getUserName(final int index) {
+		if (index == 0) {
+			return SandboxIdentityPool.BASE_USER_NAME;
+		}
+		return SandboxIdentityPool.BASE_USER_NAME + index;
+	}
+
+	/**
+	 * Maps user names to {uid, gid} using the passwd database.
+	 */
+	private static Map<String, long[]> readUsers() throws IOException {
+		final Map<String, long[]> users = new HashMap<>();
+		for (final String line : FileAccess.readUTF8String(
+				SandboxIdentityPool.PASSWD).split("\n")) {
+			final String[] fields = line.split(":");
+			if (fields.length < 4 || line.startsWith("#")) {
+				continue;
+			}
+			try {
+				users.put(fields[0], new long[] {
+						Long.parseLong(fields[2]), Long.parseLong(fields[3])
+				});
+			} catch (final NumberFormatException e) {
+				SandboxIdentityPool.logger.warn("Malformed passwd entry: {}",
+						line);
+			}
+		}
+		return users;
+	}
+
+	private final int size;
+
+	private final BlockingQueue<Identity> identities = new LinkedBlockingQueue<>();
+
+	public SandboxIdentityPool(final int size) throws IOException {
+		if (size < 1) {
+			throw new IllegalArgumentException(
+					"The identity pool must contain at least one identity");
+		}
+		this.size = size;
+
+		Map<String, long[]> users = SandboxIdentityPool.readUsers();
+		boolean createdUsers = false;
+		for (int i = 0; i < size; i++) {
+			final String name = SandboxIdentityPool.getUserName(i);
+			if (!users.containsKey(name)) {
+				SandboxIdentityPool.createUser(name);
+				createdUsers = true;
+			}
+		}
+		if (createdUsers) {
+			users = SandboxIdentityPool.readUsers();
+		}
+
+		for (int i = 0; i < size; i++) {
+			final String name = SandboxIdentityPool.getUserName(i);
+			final long[] ids = users.get(name);
+			if (ids == null) {
+				throw new IOException("Couldn't find user/group id of the "
+						+ name + " user: does it even exist?");
+			}
+			this.identities.add(new Identity(this, name, ids[0], ids[1]));
+		}
+		SandboxIdentityPool.logger.info("Sandbox identities: {}",
+				this.identities);
+	}
+
+	public int getAvailable() {
+		return this.identities.size();
+	}
+
+	public int getSize() {
+		return this.size;
+	}
+
+	/**
+	 * Waits until an identity is free and takes it. The identity must be
+	 * closed once the run that uses it is over.
+	 */
+	public Identity lease() throws IOException {
+		try {
+			final Identity identity = this.identities.take();
+			identity.leased.set(true);
+			return identity;
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(
+					"Interrupted while waiting for a sandbox identity");
+		}
+	}
+
+	private void release(final Identity identity) {
+		try {
+			final List<Long> killed = ProcessTree.killUser(identity
+					.getUserId());
+			if (!killed.isEmpty()) {
+				SandboxIdentityPool.logger.info(
+						"Killed processes left behind by {}: {}", identity,
+						killed);
+			}
+		} catch (final IOException e) {
+			// Don't hand out an identity that still has processes running
+			SandboxIdentityPool.logger.error(
+					"Couldn't kill processes of {}, retiring it: {}",
+					identity, e);
+			return;
+		}
+		this.identities.add(identity);
+	}
+}
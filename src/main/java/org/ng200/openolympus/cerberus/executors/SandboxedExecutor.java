@@ -26,19 +26,17 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.FileSystems;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
-import org.apache.commons.exec.CommandLine;
-import org.apache.commons.exec.DefaultExecutor;
-import org.apache.commons.exec.ExecuteException;
-import org.apache.commons.exec.ExecuteWatchdog;
-import org.apache.commons.exec.PumpStreamHandler;
 import org.ng200.openolympus.FileAccess;
 import org.ng200.openolympus.cerberus.ExecutionResult;
-import org.ng200.openolympus.cerberus.SolutionJudge;
-import org.ng200.openolympus.cerberus.util.TemporaryStorage;
+import org.ng200.openolympus.cerberus.util.ProcessLauncher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,11 +44,15 @@ public class SandboxedExecutor extends OpenOlympusWatchdogExecutor implements
 		Executor {
 	public static final Path CHROOT_TEMPLATE_PATH = FileSystems.getDefault()
 			.getPath("/usr/chroot");
-	private transient TemporaryStorage storage;
+	private transient JailPool jailPool;
+	private transient JailPool.Jail jail;
+	private transient Path installedProgram = null;
+	private transient VerdictChannel verdictChannel;
 	private long memoryLimit = 0;
 	private long cpuLimit = 0;
 	private long timeLimit = 0;
 	private long diskLimit = 0;
+	private Path inputFile = null;
 	private InputStream inputStream = null;
 	private OutputStream errorStream = null;
 	private OutputStream outputStream = null;
@@ -62,78 +64,90 @@ public class SandboxedExecutor extends OpenOlympusWatchdogExecutor implements
 		// Serialization constructor
 	}
 
-	public TemporaryStorage getStorage() {
-		return storage;
+	public JailPool.Jail getJail() {
+		return jail;
 	}
 
-	public void setStorage(TemporaryStorage storage) {
-		this.storage = storage;
+	public void setJail(JailPool.Jail jail) {
+		this.jail = jail;
 	}
 
-	public SandboxedExecutor(final SolutionJudge holder) throws IOException {
-		this.storage = new TemporaryStorage(holder);
-		SandboxedExecutor.logger.info("Chroot template path: {}",
-				SandboxedExecutor.CHROOT_TEMPLATE_PATH.toAbsolutePath()
-						.toString());
-		FileAccess.rsync(SandboxedExecutor.CHROOT_TEMPLATE_PATH,
-				this.storage.getPath());
+	public SandboxedExecutor(final JailPool jailPool) throws IOException {
+		this.jailPool = jailPool;
+		this.leaseJail();
+	}
+
+	private void leaseJail() throws IOException {
+		SandboxedExecutor.logger.debug("Leasing jail from pool: {}",
+				this.jailPool);
+		this.jail = this.jailPool.lease();
+		this.installedProgram = null;
+		this.verdictChannel = VerdictChannel.open(this.jail.getPath().resolve(
+				"verdict.txt"));
+		if (FileAccess.exists(this.verdictChannel.getPath(),
+				LinkOption.NOFOLLOW_LINKS)) {
+			this.jail.getSnapshot().record(this.verdictChannel.getPath());
+		}
 	}
 
 	@Override
 	public void close() throws IOException {
-		this.storage.close();
+		this.verdictChannel.close();
+		this.jail.close();
+	}
+
+	private ProcessLauncher createLauncher(final Path program,
+			final SandboxIdentityPool.Identity identity,
+			final CpuCoreLeaseManager.Lease cores) throws IOException {
+		final Path chrootedProgram = this.jail.getChroot().resolve(
+				program.getFileName().toString());
+		if (!program.equals(this.installedProgram)) {
+			SandboxedExecutor.logger.debug("Copying program into jail");
+			chrootedProgram.getParent().toFile().mkdirs();
+			FileAccess.copy(program, chrootedProgram,
+					StandardCopyOption.COPY_ATTRIBUTES,
+					StandardCopyOption.REPLACE_EXISTING);
+			this.jail.getSnapshot().record(chrootedProgram);
+			this.installedProgram = program;
+		}
+
+		final List<String> command = new ArrayList<>();
+		command.add("sudo");
+		command.add("olympus_watchdog");
+
+		this.setUpOlrunnerLimits(command, identity);
+
+		command.add(MessageFormat.format("--jail={0}", this.jail.getChroot()
+				.toAbsolutePath().toString()));
+
+		command.add("--");
+		command.add("/"
+				+ this.jail.getChroot().relativize(chrootedProgram).toString());
+
+		return new ProcessLauncher(cores.pin(command))
+				.setTimeout(this.getWatchdogTimeout())
+				.setWorkingDirectory(this.jail.getPath())
+				.setOutputStream(this.outputStream)
+				.setErrorStream(this.errorStream)
+				.setInputFile(this.inputFile)
+				.setInputStream(this.inputStream);
 	}
 
 	@Override
 	public ExecutionResult execute(final Path program) throws IOException {
-		SandboxedExecutor.logger.debug("Copying program into jail");
-		final Path chrootedProgram = this.storage.getPath().resolve("chroot")
-				.resolve(program.getFileName().toString());
-		chrootedProgram.getParent().toFile().mkdirs();
-		FileAccess.copy(program, chrootedProgram,
-				StandardCopyOption.COPY_ATTRIBUTES);
-
-		final CommandLine commandLine = new CommandLine("sudo");
-		commandLine.addArgument("olympus_watchdog");
-
-		this.setUpOlrunnerLimits(commandLine);
-
-		commandLine.addArgument(MessageFormat.format("--jail={0}", this.storage
-				.getPath().resolve("chroot").toAbsolutePath().toString()));
-
-		commandLine.addArgument("--");
-		commandLine.addArgument("/"
-				+ this.storage.getPath().resolve("chroot")
-						.relativize(chrootedProgram).toString());
-
-		final DefaultExecutor executor = new DefaultExecutor();
-
-		executor.setExitValue(0);
-
-		executor.setWatchdog(new ExecuteWatchdog(60000)); // 60 seconds for the
-		// sandbox to
-		// complete
-
-		executor.setWorkingDirectory(this.storage.getPath().toFile());
-
-		executor.setStreamHandler(new PumpStreamHandler(this.outputStream,
-				this.errorStream, this.inputStream));
-
-		SandboxedExecutor.logger.debug("Executing in sandbox: {}",
-				commandLine.toString());
-		try {
-			executor.execute(commandLine);
-		} catch (final ExecuteException e) {
-			SandboxedExecutor.logger.info("Execution failed: {}", e);
-			throw e;
-		} catch (final IOException e) {
-			if (!e.getMessage().toLowerCase().equals("stream closed")) {
-				throw e;
-			}
-		}
+		return this.launchWatchdog(
+				(identity, cores) -> this.createLauncher(program, identity,
+						cores),
+				this.verdictChannel);
+	}
 
-		return this.readOlrunnerVerdict(this.storage.getPath().resolve(
-				"verdict.txt"));
+	@Override
+	public CompletableFuture<ExecutionResult> executeAsync(final Path program)
+			throws IOException {
+		return this.launchWatchdogAsync(
+				(identity, cores) -> this.createLauncher(program, identity,
+						cores),
+				this.verdictChannel);
 	}
 
 	@Override
@@ -154,8 +168,13 @@ public class SandboxedExecutor extends OpenOlympusWatchdogExecutor implements
 	@Override
 	public void getFile(final String name, final Path destination)
 			throws IOException {
-		FileAccess.copy(this.storage.getPath().resolve("chroot").resolve(name),
-				destination, StandardCopyOption.REPLACE_EXISTING);
+		FileAccess.copy(this.jail.getChroot().resolve(name), destination,
+				StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	@Override
+	public Path getInputFile() {
+		return this.inputFile;
 	}
 
 	@Override
@@ -181,10 +200,19 @@ public class SandboxedExecutor extends OpenOlympusWatchdogExecutor implements
 	@Override
 	public void provideFile(final Path file) throws IOException {
 		SandboxedExecutor.logger.info("Providing file {}", file);
-		FileAccess.copy(
-				file,
-				this.storage.getPath().resolve("chroot")
-						.resolve(file.getFileName()));
+		FileAccess.copy(file, this.jail.getChroot()
+				.resolve(file.getFileName()));
+	}
+
+	@Override
+	public void reset() throws IOException {
+		if (!this.jail.getSnapshot().restore()) {
+			SandboxedExecutor.logger
+					.warn("Jail {} was modified by the previous run, leasing a new one",
+							this.jail.getPath());
+			this.close();
+			this.leaseJail();
+		}
 	}
 
 	@Override
@@ -205,6 +233,12 @@ public class SandboxedExecutor extends OpenOlympusWatchdogExecutor implements
 		return this;
 	}
 
+	@Override
+	public SandboxedExecutor setInputFile(final Path inputFile) {
+		this.inputFile = inputFile;
+		return this;
+	}
+
 	@Override
 	public SandboxedExecutor setInputStream(final InputStream inputStream) {
 		this.inputStream = inputStream;
@@ -0,0 +1,102 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014-2015 Nick Guletskii
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ng200.openolympus.cerberus.executors;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.ng200.openolympus.cerberus.ExecutionResult;
+import org.ng200.openolympus.cerberus.util.ProcessLauncher;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Where an executor picks up the verdict that olympus_watchdog writes to
+ * <code>verdict.txt</code> in its working directory.
+ */
+public interface VerdictChannel extends Closeable {
+
+	/**
+	 * Opens a verdict channel at the given path: a named pipe if possible,
+	 * otherwise a plain file.
+	 */
+	public static VerdictChannel open(final Path path) {
+		if (Boolean.parseBoolean(System.getProperty("cerberus.verdict.pipe",
+				"true"))) {
+			try {
+				return new PipeVerdictChannel(path);
+			} catch (final IOException e) {
+				LoggerFactory.getLogger(VerdictChannel.class).warn(
+						"Couldn't create verdict pipe, using a file: {}", e);
+			}
+		}
+		return new FileVerdictChannel(path);
+	}
+
+	public abstract Path getPath();
+
+	/**
+	 * @return true if the last run has produced a verdict
+	 */
+	public abstract boolean hasVerdict() throws IOException;
+
+	/**
+	 * Discards anything left over from a previous run.
+	 */
+	public abstract void prepare() throws IOException;
+
+	public abstract ExecutionResult read() throws IOException;
+
+	/**
+	 * Reads the verdict of a run that has finished. A failed run is only
+	 * tolerated if its output was rejected, in which case the verdict may be
+	 * missing, or if the host had to kill the sandbox, which is an internal
+	 * error.
+	 *
+	 * @param failure
+	 *            the exception the launcher has thrown, or null
+	 */
+	public default ExecutionResult readAfter(final ProcessLauncher launcher,
+			final IOException failure) throws IOException {
+		if (launcher.isTimedOut()) {
+			final ExecutionResult result = new ExecutionResult(
+					ExecutionResult.ExecutionResultType.INTERNAL_ERROR, -1,
+					-1, -1, -1);
+			result.setDiagnostics("The sandbox exceeded its deadline: "
+					+ launcher.getDiagnostics());
+			return result;
+		}
+		if (failure != null
+				&& !(failure instanceof ProcessLauncher.ExitValueException && launcher
+						.isOutputRejected())) {
+			throw failure;
+		}
+		if (launcher.isOutputRejected() && !this.hasVerdict()) {
+			// The program was stopped before a verdict could be written
+			return new ExecutionResult(
+					ExecutionResult.ExecutionResultType.ABNORMAL_TERMINATION,
+					-1, -1, -1, -1);
+		}
+		return this.read();
+	}
+}
@@ -0,0 +1,132 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014-2015 Nick Guletskii
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ng200.openolympus.cerberus.executors;
+
+import org.ng200.openolympus.cerberus.ExecutionResult;
+
+/**
+ * Parses the verdicts written by olympus_watchdog, which look like
+ * <code>TYPE</code>, <code>TYPE(syscall)</code>,
+ * <code>TYPE(realTime, cpuTime, memoryPeak)</code> or
+ * <code>TYPE(realTime, cpuTime, memoryPeak, syscall)</code>. All values are
+ * parsed as 64-bit numbers.
+ */
+public final class VerdictParser {
+
+	private static final int MAXIMUM_VALUES = 4;
+
+	private static IllegalStateException malformed(final CharSequence text) {
+		return new IllegalStateException(
+				"The verdict doesn't contain a validly formatted string! Got this: \""
+						+ text + "\"");
+	}
+
+	public static ExecutionResult parse(final CharSequence text) {
+		int position = 0;
+		int end = text.length();
+		while (position < end && Character.isWhitespace(text.charAt(position))) {
+			position++;
+		}
+		while (end > position && Character.isWhitespace(text.charAt(end - 1))) {
+			end--;
+		}
+
+		final int typeStart = position;
+		while (position < end
+				&& (Character.isLetter(text.charAt(position)) || text
+						.charAt(position) == '_')) {
+			position++;
+		}
+		if (position == typeStart) {
+			throw VerdictParser.malformed(text);
+		}
+		final ExecutionResult.ExecutionResultType type;
+		try {
+			type = ExecutionResult.ExecutionResultType.valueOf(text
+					.subSequence(typeStart, position).toString());
+		} catch (final IllegalArgumentException e) {
+			throw VerdictParser.malformed(text);
+		}
+
+		final long[] values = new long[VerdictParser.MAXIMUM_VALUES];
+		int valueCount = 0;
+		if (position < end) {
+			if (text.charAt(position) != '(' || text.charAt(end - 1) != ')') {
+				throw VerdictParser.malformed(text);
+			}
+			position++;
+			while (true) {
+				if (valueCount == VerdictParser.MAXIMUM_VALUES) {
+					throw VerdictParser.malformed(text);
+				}
+				while (position < end
+						&& Character.isWhitespace(text.charAt(position))) {
+					position++;
+				}
+				final int digitsStart = position;
+				long value = 0;
+				while (position < end && text.charAt(position) >= '0'
+						&& text.charAt(position) <= '9') {
+					final int digit = text.charAt(position) - '0';
+					if (value > (Long.MAX_VALUE - digit) / 10) {
+						throw VerdictParser.malformed(text);
+					}
+					value = value * 10 + digit;
+					position++;
+				}
+				if (position == digitsStart) {
+					throw VerdictParser.malformed(text);
+				}
+				values[valueCount++] = value;
+				if (text.charAt(position) == ')') {
+					break;
+				}
+				if (text.charAt(position) != ',') {
+					throw VerdictParser.malformed(text);
+				}
+				position++;
+			}
+			if (position != end - 1) {
+				throw VerdictParser.malformed(text);
+			}
+		}
+
+		switch (valueCount) {
+		case 0:
+			return new ExecutionResult(type, -1, -1, -1, -1);
+		case 1:
+			return new ExecutionResult(type, -1, -1, -1, values[0]);
+		case 3:
+			return new ExecutionResult(type, values[0], values[1], values[2],
+					-1);
+		case 4:
+			return new ExecutionResult(type, values[0], values[1], values[2],
+					values[3]);
+		default:
+			throw VerdictParser.malformed(text);
+		}
+	}
+
+	private VerdictParser() {
+	}
+}
@@ -27,7 +27,7 @@ import java.io.StringWriter;
 
 public class Exceptions {
 
-	public static String toString(final Exception e) {
+	public static String toString(final Throwable e) {
 		final StringWriter writer = new StringWriter();
 		final PrintWriter printWriter = new PrintWriter(writer);
 		e.printStackTrace(printWriter);
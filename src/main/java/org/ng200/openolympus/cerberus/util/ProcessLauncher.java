@@ -0,0 +1,545 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014-2015 Nick Guletskii
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ng200.openolympus.cerberus.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.ProcessBuilder.Redirect;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Launches external processes using {@link ProcessBuilder}. Standard streams
+ * are redirected to files whenever possible; streams that have to be read or
+ * written from Java are copied through NIO channels, either on the calling
+ * thread or on a shared pool. No threads are created per process.
+ */
+public class ProcessLauncher {
+
+	public static class ExitValueException extends IOException {
+
+		/**
+		 *
+		 */
+		private static final long serialVersionUID = -3064785035262698470L;
+		private final int exitValue;
+
+		public ExitValueException(final String message, final int exitValue) {
+			super(message);
+			this.exitValue = exitValue;
+		}
+
+		public int getExitValue() {
+			return this.exitValue;
+		}
+	}
+
+	private static class PendingProcess {
+		private final ProcessLauncher launcher;
+		private final Process process;
+		private final List<Future<?>> pumps;
+		private final ScheduledFuture<?> watchdogTask;
+		private final CompletableFuture<Integer> result;
+
+		public PendingProcess(final ProcessLauncher launcher,
+				final Process process, final List<Future<?>> pumps,
+				final ScheduledFuture<?> watchdogTask,
+				final CompletableFuture<Integer> result) {
+			this.launcher = launcher;
+			this.process = process;
+			this.pumps = pumps;
+			this.watchdogTask = watchdogTask;
+			this.result = result;
+		}
+
+		public void complete() {
+			if (this.watchdogTask != null) {
+				this.watchdogTask.cancel(false);
+			}
+			try {
+				for (final Future<?> pump : this.pumps) {
+					pump.get();
+				}
+				final int exitValue = this.process.exitValue();
+				this.launcher.checkExitValue(exitValue);
+				this.result.complete(exitValue);
+			} catch (final ExecutionException e) {
+				this.result.completeExceptionally(new IOException(
+						"Couldn't copy the process' streams", e.getCause()));
+			} catch (final Exception e) {
+				this.result.completeExceptionally(e);
+			}
+		}
+
+		public boolean isFinished() {
+			return !this.process.isAlive()
+					&& this.pumps.stream().allMatch(Future::isDone);
+		}
+	}
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(ProcessLauncher.class);
+
+	private static final File NULL_FILE = new File("/dev/null");
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final ExecutorService streamPumps = Executors
+			.newCachedThreadPool(ProcessLauncher
+					.daemonThreadFactory("cerberus-stream-pump"));
+
+	private static final ScheduledExecutorService watchdog = Executors
+			.newSingleThreadScheduledExecutor(ProcessLauncher
+					.daemonThreadFactory("cerberus-process-watchdog"));
+
+	/**
+	 * How often, in milliseconds, the reaper polls for finished processes.
+	 * Polling more often than this keeps a core of the judge busy and
+	 * disturbs the timing of the programs that are being measured; the
+	 * measured times come from the sandbox, not from the reaper.
+	 */
+	private static final long REAPER_INTERVAL = Long.getLong(
+			"cerberus.processReaper.interval", 10);
+
+	private static final List<PendingProcess> pendingProcesses = new ArrayList<>();
+
+	private static ScheduledFuture<?> reaperTask = null;
+
+	private static ThreadFactory daemonThreadFactory(final String name) {
+		final AtomicInteger threadNumber = new AtomicInteger();
+		return (runnable) -> {
+			final Thread thread = new Thread(runnable, name + "-"
+					+ threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	private static void pump(final InputStream from, final OutputStream to)
+			throws IOException {
+		if (!ProcessLauncher.pumpUntilRejected(from, to)) {
+			throw new IOException("Destination stream refused the data");
+		}
+	}
+
+	/**
+	 * @return false if writing to the destination failed before the source
+	 *         was exhausted
+	 */
+	private static boolean pumpUntilRejected(final InputStream from,
+			final OutputStream to) throws IOException {
+		final ReadableByteChannel source = Channels.newChannel(from);
+		final WritableByteChannel destination = Channels.newChannel(to);
+		final ByteBuffer buffer = ByteBuffer
+				.allocate(ProcessLauncher.BUFFER_SIZE);
+		while (source.read(buffer) != -1) {
+			buffer.flip();
+			try {
+				while (buffer.hasRemaining()) {
+					destination.write(buffer);
+				}
+			} catch (final IOException e) {
+				return false;
+			}
+			buffer.clear();
+		}
+		to.flush();
+		return true;
+	}
+
+	private static synchronized void reap(final PendingProcess process) {
+		ProcessLauncher.pendingProcesses.add(process);
+		if (ProcessLauncher.reaperTask == null) {
+			ProcessLauncher.reaperTask = ProcessLauncher.watchdog
+					.scheduleWithFixedDelay(ProcessLauncher::reapFinished,
+							ProcessLauncher.REAPER_INTERVAL,
+							ProcessLauncher.REAPER_INTERVAL,
+							TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Polls the processes started by {@link #executeAsync()}. Java 8 has no
+	 * way to be notified of a process' exit without blocking a thread on it,
+	 * so a single task checks all of them periodically instead.
+	 */
+	private static void reapFinished() {
+		final List<PendingProcess> finished = new ArrayList<>();
+		synchronized (ProcessLauncher.class) {
+			final Iterator<PendingProcess> iterator = ProcessLauncher.pendingProcesses
+					.iterator();
+			while (iterator.hasNext()) {
+				final PendingProcess process = iterator.next();
+				if (process.isFinished()) {
+					iterator.remove();
+					finished.add(process);
+				}
+			}
+			if (ProcessLauncher.pendingProcesses.isEmpty()) {
+				ProcessLauncher.reaperTask.cancel(false);
+				ProcessLauncher.reaperTask = null;
+			}
+		}
+		// Dependent stages run on the pump pool, keeping the watchdog free
+		finished.forEach(process -> ProcessLauncher.streamPumps
+				.execute(process::complete));
+	}
+
+	/**
+	 * Replaces ${key} in the argument with the corresponding value, like
+	 * commons-exec's substitution maps did.
+	 */
+	public static String substitute(final String argument,
+			final Map<String, ?> substitutions) {
+		String result = argument;
+		for (final Map.Entry<String, ?> entry : substitutions.entrySet()) {
+			result = result.replace("${" + entry.getKey() + "}",
+					String.valueOf(entry.getValue()));
+		}
+		return result;
+	}
+
+	private final List<String> command;
+	private Path workingDirectory = null;
+	private Path inputFile = null;
+	private InputStream inputStream = null;
+	private Path outputFile = null;
+	private OutputStream outputStream = null;
+	private Path errorFile = null;
+	private OutputStream errorStream = null;
+	private boolean redirectErrorStream = false;
+	private long timeout = 0;
+	private long rejectedOutputGracePeriod = 100;
+	private int[] exitValues = {
+		0
+	};
+	private volatile boolean timedOut = false;
+	private volatile boolean outputRejected = false;
+	private volatile String diagnostics = null;
+
+	public ProcessLauncher(final List<String> command) {
+		this.command = new ArrayList<>(command);
+	}
+
+	public ProcessLauncher(final String... command) {
+		this(Arrays.asList(command));
+	}
+
+	private void checkExitValue(final int exitValue)
+			throws ExitValueException {
+		if (this.exitValues != null
+				&& Arrays.stream(this.exitValues).noneMatch(
+						value -> value == exitValue)) {
+			throw new ExitValueException(
+					"Process exited with an unexpected exit value: "
+							+ exitValue, exitValue);
+		}
+	}
+
+	public int execute() throws IOException {
+		final Process process = this.start();
+		final ScheduledFuture<?> watchdogTask = this.scheduleTimeout(process);
+
+		try {
+			this.pumpInput(process);
+			final Future<?> errorPump = this.pumpError(process);
+
+			if (this.outputStream != null
+					&& this.outputFile == null
+					&& !ProcessLauncher.pumpUntilRejected(
+							process.getInputStream(), this.outputStream)) {
+				// Nobody wants the rest of the output: close the pipe, so that
+				// the process gets SIGPIPE, and terminate it if it ignores
+				// that.
+				this.outputRejected = true;
+				process.getInputStream().close();
+				if (!process.waitFor(this.rejectedOutputGracePeriod,
+						TimeUnit.MILLISECONDS)) {
+					process.destroy();
+				}
+			}
+
+			final int exitValue = process.waitFor();
+
+			if (errorPump != null) {
+				errorPump.get();
+			}
+
+			this.checkExitValue(exitValue);
+			return exitValue;
+		} catch (final InterruptedException e) {
+			process.destroyForcibly();
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(
+					"Interrupted while waiting for the process to finish");
+		} catch (final ExecutionException e) {
+			throw new IOException("Couldn't read the process' error stream",
+					e.getCause());
+		} finally {
+			if (watchdogTask != null) {
+				watchdogTask.cancel(false);
+			}
+			if (process.isAlive()) {
+				process.destroyForcibly();
+			}
+		}
+	}
+
+	/**
+	 * Starts the process without blocking the calling thread. Streams that
+	 * have to be copied from or to Java are handled by the shared pump pool,
+	 * and the process is waited for by a shared reaper.
+	 *
+	 * @return a future that completes with the exit value, or exceptionally
+	 *         with the same exceptions as {@link #execute()}
+	 */
+	public CompletableFuture<Integer> executeAsync() {
+		final CompletableFuture<Integer> result = new CompletableFuture<>();
+		final Process process;
+		try {
+			process = this.start();
+		} catch (final IOException e) {
+			result.completeExceptionally(e);
+			return result;
+		}
+
+		final List<Future<?>> pumps = new ArrayList<>();
+		this.pumpInput(process);
+		final Future<?> errorPump = this.pumpError(process);
+		if (errorPump != null) {
+			pumps.add(errorPump);
+		}
+		if (this.outputStream != null && this.outputFile == null) {
+			pumps.add(ProcessLauncher.streamPumps.submit(() -> {
+				if (!ProcessLauncher.pumpUntilRejected(
+						process.getInputStream(), this.outputStream)) {
+					this.outputRejected = true;
+					process.getInputStream().close();
+					ProcessLauncher.watchdog.schedule(() -> {
+						if (process.isAlive()) {
+							process.destroy();
+						}
+					}, this.rejectedOutputGracePeriod, TimeUnit.MILLISECONDS);
+				}
+				return null;
+			}));
+		}
+
+		ProcessLauncher.reap(new PendingProcess(this, process, pumps, this
+				.scheduleTimeout(process), result));
+		return result;
+	}
+
+	public List<String> getCommand() {
+		return this.command;
+	}
+
+	/**
+	 * @return a description of why the process was killed, or null
+	 */
+	public String getDiagnostics() {
+		return this.diagnostics;
+	}
+
+	public long getTimeout() {
+		return this.timeout;
+	}
+
+	public boolean isOutputRejected() {
+		return this.outputRejected;
+	}
+
+	public boolean isTimedOut() {
+		return this.timedOut;
+	}
+
+	private Future<?> pumpError(final Process process) {
+		if (this.errorStream == null || this.redirectErrorStream
+				|| this.errorFile != null) {
+			return null;
+		}
+		return ProcessLauncher.streamPumps.submit(() -> {
+			ProcessLauncher.pump(process.getErrorStream(), this.errorStream);
+			return null;
+		});
+	}
+
+	private void pumpInput(final Process process) {
+		if (this.inputStream == null || this.inputFile != null) {
+			return;
+		}
+		ProcessLauncher.streamPumps.submit(() -> {
+			try (OutputStream stdin = process.getOutputStream()) {
+				ProcessLauncher.pump(this.inputStream, stdin);
+			} catch (final IOException e) {
+				// The process has closed its standard input
+			}
+		});
+	}
+
+	private ScheduledFuture<?> scheduleTimeout(final Process process) {
+		if (this.timeout <= 0) {
+			return null;
+		}
+		final long started = System.currentTimeMillis();
+		return ProcessLauncher.watchdog.schedule(() -> {
+			this.diagnostics = MessageFormat.format(
+					"{0} didn''t finish within {1} ms", this.command.get(0),
+					Long.toString(System.currentTimeMillis() - started));
+			this.timedOut = true;
+			// Killing the tree starts processes of its own, so it mustn't
+			// block the watchdog
+			ProcessLauncher.streamPumps.submit(() -> {
+				this.diagnostics += ", killed processes "
+						+ ProcessTree.kill(process);
+				ProcessLauncher.logger.warn("{}: {}", this, this.diagnostics);
+			});
+		}, this.timeout, TimeUnit.MILLISECONDS);
+	}
+
+	public ProcessLauncher setErrorFile(final Path errorFile) {
+		this.errorFile = errorFile;
+		return this;
+	}
+
+	public ProcessLauncher setErrorStream(final OutputStream errorStream) {
+		this.errorStream = errorStream;
+		return this;
+	}
+
+	/**
+	 * @param exitValues
+	 *            the exit values that are considered successful, or null to
+	 *            accept any exit value
+	 */
+	public ProcessLauncher setExitValues(final int... exitValues) {
+		this.exitValues = exitValues;
+		return this;
+	}
+
+	public ProcessLauncher setInputFile(final Path inputFile) {
+		this.inputFile = inputFile;
+		return this;
+	}
+
+	public ProcessLauncher setInputStream(final InputStream inputStream) {
+		this.inputStream = inputStream;
+		return this;
+	}
+
+	public ProcessLauncher setOutputFile(final Path outputFile) {
+		this.outputFile = outputFile;
+		return this;
+	}
+
+	public ProcessLauncher setOutputStream(final OutputStream outputStream) {
+		this.outputStream = outputStream;
+		return this;
+	}
+
+	/**
+	 * @param rejectedOutputGracePeriod
+	 *            how long to wait for the process to exit by itself after the
+	 *            output stream has refused its output
+	 */
+	public ProcessLauncher setRejectedOutputGracePeriod(
+			final long rejectedOutputGracePeriod) {
+		this.rejectedOutputGracePeriod = rejectedOutputGracePeriod;
+		return this;
+	}
+
+	public ProcessLauncher setRedirectErrorStream(
+			final boolean redirectErrorStream) {
+		this.redirectErrorStream = redirectErrorStream;
+		return this;
+	}
+
+	public ProcessLauncher setTimeout(final long timeout) {
+		this.timeout = timeout;
+		return this;
+	}
+
+	public ProcessLauncher setWorkingDirectory(final Path workingDirectory) {
+		this.workingDirectory = workingDirectory;
+		return this;
+	}
+
+	private Process start() throws IOException {
+		final ProcessBuilder builder = new ProcessBuilder(this.command);
+		if (this.workingDirectory != null) {
+			builder.directory(this.workingDirectory.toFile());
+		}
+
+		if (this.inputFile != null) {
+			builder.redirectInput(this.inputFile.toFile());
+		} else if (this.inputStream == null) {
+			builder.redirectInput(ProcessLauncher.NULL_FILE);
+		}
+
+		if (this.outputFile != null) {
+			builder.redirectOutput(this.outputFile.toFile());
+		} else if (this.outputStream == null) {
+			builder.redirectOutput(ProcessLauncher.NULL_FILE);
+		}
+
+		if (this.redirectErrorStream) {
+			builder.redirectErrorStream(true);
+		} else if (this.errorFile != null) {
+			builder.redirectError(this.errorFile.toFile());
+		} else if (this.errorStream == null) {
+			builder.redirectError(ProcessLauncher.NULL_FILE);
+		}
+
+		return builder.start();
+	}
+
+	@Override
+	public String toString() {
+		return this.command.toString();
+	}
+}
@@ -0,0 +1,211 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014-2015 Nick Guletskii
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ng200.openolympus.cerberus.util;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.ng200.openolympus.FileAccess;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Kills processes together with everything they have spawned. Sandboxes are
+ * started through sudo, so their processes can't always be signalled
+ * directly, and killing only the top process would leave its children
+ * reparented to init.
+ */
+public final class ProcessTree {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(ProcessTree.class);
+
+	private static final Path PROC = FileSystems.getDefault().getPath("/proc");
+
+	private static final int KILL_ROUNDS = 10;
+
+	/**
+	 * @return the process id, or -1 if it can't be determined
+	 */
+	public static long getPid(final Process process) {
+		try {
+			// Process.pid() exists since Java 9
+			return (Long) Process.class.getMethod("pid").invoke(process);
+		} catch (final ReflectiveOperationException e) {
+			try {
+				final Field field = process.getClass()
+						.getDeclaredField("pid");
+				field.setAccessible(true);
+				return field.getInt(process);
+			} catch (final ReflectiveOperationException | RuntimeException e1) {
+				return -1;
+			}
+		}
+	}
+
+	/**
+	 * @return the process and all of its descendants, parents first
+	 */
+	public static List<Long> getTree(final long pid) throws IOException {
+		final Map<Long, List<Long>> children = new HashMap<>();
+		for (final Path process : FileAccess.actOnChildren(ProcessTree.PROC,
+				processes -> processes.collect(Collectors.toList()))) {
+			final String name = process.getFileName().toString();
+			if (!name.chars().allMatch(Character::isDigit)) {
+				continue;
+			}
+			try {
+				final String stat = FileAccess.readUTF8String(process
+						.resolve("stat"));
+				// The command name may contain spaces and parentheses
+				final String[] fields = stat.substring(
+						stat.lastIndexOf(')') + 2).split(" ");
+				children.computeIfAbsent(Long.parseLong(fields[1]),
+						key -> new ArrayList<>()).add(Long.parseLong(name));
+			} catch (final IOException | RuntimeException e) {
+				// The process has exited while we were looking at it
+			}
+		}
+
+		final List<Long> tree = new ArrayList<>();
+		tree.add(pid);
+		for (int i = 0; i < tree.size(); i++) {
+			tree.addAll(children.getOrDefault(tree.get(i),
+					Collections.emptyList()));
+		}
+		return tree;
+	}
+
+	/**
+	 * @return the processes that run as the given user and haven't exited
+	 *         yet
+	 */
+	public static List<Long> getUserProcesses(final long uid)
+			throws IOException {
+		final List<Long> processes = new ArrayList<>();
+		for (final Path process : FileAccess.actOnChildren(ProcessTree.PROC,
+				children -> children.collect(Collectors.toList()))) {
+			final String name = process.getFileName().toString();
+			if (!name.chars().allMatch(Character::isDigit)) {
+				continue;
+			}
+			try {
+				// /proc/<pid> belongs to the process' effective user
+				if (((Number) Files.getAttribute(process, "unix:uid"))
+						.longValue() != uid) {
+					continue;
+				}
+				final String stat = FileAccess.readUTF8String(process
+						.resolve("stat"));
+				// Zombies are dead already, their parent just hasn't reaped
+				// them
+				if (stat.charAt(stat.lastIndexOf(')') + 2) != 'Z') {
+					processes.add(Long.parseLong(name));
+				}
+			} catch (final IOException | RuntimeException e) {
+				// The process has exited while we were looking at it
+			}
+		}
+		return processes;
+	}
+
+	/**
+	 * Sends SIGKILL to the process and all of its descendants, falling back
+	 * to sudo for processes that belong to other users.
+	 *
+	 * @return the process ids that were signalled
+	 */
+	public static List<Long> kill(final Process process) {
+		final long pid = ProcessTree.getPid(process);
+		if (pid < 0) {
+			process.destroyForcibly();
+			return Collections.emptyList();
+		}
+		try {
+			final List<Long> tree = ProcessTree.getTree(pid);
+			ProcessTree.signal(tree);
+			return tree;
+		} catch (final IOException e) {
+			ProcessTree.logger.warn("Couldn't kill process tree of {}: {}",
+					pid, e);
+			return Collections.emptyList();
+		} finally {
+			process.destroyForcibly();
+		}
+	}
+
+	/**
+	 * Sends SIGKILL to every process that runs as the given user, repeatedly,
+	 * so that processes that were forked or reparented to init in the
+	 * meantime are killed as well.
+	 *
+	 * @return the process ids that were signalled
+	 * @throws IOException
+	 *             if processes of the user are still alive afterwards
+	 */
+	public static List<Long> killUser(final long uid) throws IOException {
+		final List<Long> killed = new ArrayList<>();
+		for (int round = 0; round < ProcessTree.KILL_ROUNDS; round++) {
+			final List<Long> processes = ProcessTree.getUserProcesses(uid);
+			if (processes.isEmpty()) {
+				return killed;
+			}
+			ProcessTree.signal(processes);
+			killed.addAll(processes);
+		}
+		final List<Long> survivors = ProcessTree.getUserProcesses(uid);
+		if (!survivors.isEmpty()) {
+			throw new IOException("Processes " + survivors + " of user " + uid
+					+ " survived " + ProcessTree.KILL_ROUNDS
+					+ " rounds of SIGKILL");
+		}
+		return killed;
+	}
+
+	private static void signal(final List<Long> pids) throws IOException {
+		final List<String> command = new ArrayList<>();
+		command.add("kill");
+		command.add("-KILL");
+		command.addAll(pids.stream().map(p -> Long.toString(p))
+				.collect(Collectors.toList()));
+		if (new ProcessLauncher(command).setExitValues(null).setTimeout(1000)
+				.execute() != 0) {
+			command.add(0, "sudo");
+			command.add(1, "-n");
+			new ProcessLauncher(command).setExitValues(null).setTimeout(1000)
+					.execute();
+		}
+	}
+
+	private ProcessTree() {
+	}
+}
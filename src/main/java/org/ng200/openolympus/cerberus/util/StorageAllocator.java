@@ -0,0 +1,293 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014-2015 Nick Guletskii
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ng200.openolympus.cerberus.util;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.ng200.openolympus.FileAccess;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Places temporary directories on a list of storage tiers, fastest first.
+ * Each tier has a quota of bytes that may be reserved on it; a directory
+ * goes to the first tier that can take its expected size, so that small
+ * working sets stay on the ramdisk and large ones, or ones that arrive while
+ * the ramdisk is full, spill to disk.
+ */
+public class StorageAllocator {
+
+	/**
+	 * Space reserved on a tier. Reservations can grow after the directory
+	 * has been created, but the directory never moves to another tier.
+	 */
+	public static class Allocation implements AutoCloseable {
+		private final Tier tier;
+		private final Path path;
+		private final AtomicLong reserved = new AtomicLong();
+		private final AtomicBoolean released = new AtomicBoolean(false);
+
+		private Allocation(final Tier tier, final Path path,
+				final long reserved) {
+			this.tier = tier;
+			this.path = path;
+			this.reserved.set(reserved);
+		}
+
+		/**
+		 * Returns the reservation to the tier. Doesn't delete the directory.
+		 */
+		@Override
+		public void close() {
+			if (this.released.compareAndSet(false, true)) {
+				this.tier.reserved.addAndGet(-this.reserved.get());
+				this.tier.allocations.decrementAndGet();
+			}
+		}
+
+		public Path getPath() {
+			return this.path;
+		}
+
+		public long getReserved() {
+			return this.reserved.get();
+		}
+
+		public Tier getTier() {
+			return this.tier;
+		}
+
+		public void release(final long bytes) {
+			this.reserve(-Math.min(bytes, this.reserved.get()));
+		}
+
+		/**
+		 * Reserves additional space, e.g. for files that are about to be
+		 * copied into the directory.
+		 */
+		public void reserve(final long bytes) {
+			if (this.released.get()) {
+				return;
+			}
+			this.reserved.addAndGet(bytes);
+			final long total = this.tier.reserved.addAndGet(bytes);
+			if (bytes > 0 && this.tier.quota > 0 && total > this.tier.quota) {
+				this.tier.overflows.incrementAndGet();
+				StorageAllocator.logger.warn(
+						"Storage tier {} is over its quota: {} of {} bytes",
+						this.tier.root, total, this.tier.quota);
+			}
+		}
+	}
+
+	public static class Tier {
+		private final Path root;
+		private final long quota;
+		private final AtomicLong reserved = new AtomicLong();
+		private final AtomicLong allocations = new AtomicLong();
+		private final AtomicLong overflows = new AtomicLong();
+
+		public Tier(final Path root, final long quota) {
+			this.root = root;
+			this.quota = quota;
+		}
+
+		private boolean canTake(final long bytes) throws IOException {
+			if (this.quota > 0 && this.reserved.get() + bytes > this.quota) {
+				return false;
+			}
+			return FileAccess.getFileStore(this.root).getUsableSpace() >= bytes;
+		}
+
+		/**
+		 * @return the number of directories currently allocated on this tier
+		 */
+		public long getAllocations() {
+			return this.allocations.get();
+		}
+
+		/**
+		 * @return how many times reservations have grown past the quota
+		 */
+		public long getOverflows() {
+			return this.overflows.get();
+		}
+
+		/**
+		 * @return the quota in bytes, or 0 if the tier is only limited by its
+		 *         file store
+		 */
+		public long getQuota() {
+			return this.quota;
+		}
+
+		public long getReserved() {
+			return this.reserved.get();
+		}
+
+		public Path getRoot() {
+			return this.root;
+		}
+
+		/**
+		 * @return the reserved fraction of the quota, or 0 if there's no quota
+		 */
+		public double getUtilisation() {
+			return this.quota > 0 ? (double) this.reserved.get() / this.quota
+					: 0;
+		}
+
+		@Override
+		public String toString() {
+			return this.root + " (" + this.reserved.get() + "/" + this.quota
+					+ " bytes, " + this.allocations.get() + " directories)";
+		}
+	}
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(StorageAllocator.class);
+
+	private static final Path RAMDISK_ROOT = FileSystems.getDefault().getPath(
+			"/tmp/ramdisk");
+
+	private static StorageAllocator defaultAllocator = null;
+
+	/**
+	 * Creates the allocator described by <code>cerberus.storage.tiers</code>,
+	 * a comma-separated list of <code>root[:quota]</code> entries, where the
+	 * quota may have a K, M or G suffix. By default, the ramdisk (if present)
+	 * may be filled up to 90% and everything else goes to the default
+	 * temporary directory.
+	 */
+	public static synchronized StorageAllocator getDefault()
+			throws IOException {
+		if (StorageAllocator.defaultAllocator == null) {
+			final List<Tier> tiers = new ArrayList<>();
+			final String configuration = System
+					.getProperty("cerberus.storage.tiers");
+			if (configuration != null) {
+				for (final String entry : configuration.split(",")) {
+					final int separator = entry.lastIndexOf(':');
+					tiers.add(separator < 0 ? new Tier(FileSystems.getDefault()
+							.getPath(entry.trim()), 0) : new Tier(FileSystems
+							.getDefault().getPath(
+									entry.substring(0, separator).trim()),
+							StorageAllocator.parseBytes(entry.substring(
+									separator + 1).trim())));
+				}
+			} else {
+				if (FileAccess.exists(StorageAllocator.RAMDISK_ROOT)) {
+					tiers.add(new Tier(StorageAllocator.RAMDISK_ROOT,
+							FileAccess.getFileStore(
+									StorageAllocator.RAMDISK_ROOT)
+									.getTotalSpace() / 10 * 9));
+				}
+				tiers.add(new Tier(FileSystems.getDefault().getPath(
+						System.getProperty("java.io.tmpdir")), 0));
+			}
+			StorageAllocator.defaultAllocator = new StorageAllocator(tiers);
+			StorageAllocator.logger.info("Temporary storage tiers: {}", tiers);
+		}
+		return StorageAllocator.defaultAllocator;
+	}
+
+	private static long parseBytes(final String size) {
+		final char unit = Character.toUpperCase(size.charAt(size.length() - 1));
+		switch (unit) {
+		case 'K':
+			return ResourceUnits.kibibytes(Long.parseLong(size.substring(0,
+					size.length() - 1)));
+		case 'M':
+			return ResourceUnits.mebibytes(Long.parseLong(size.substring(0,
+					size.length() - 1)));
+		case 'G':
+			return ResourceUnits.mebibytes(Long.parseLong(size.substring(0,
+					size.length() - 1))) * 1024;
+		default:
+			return ResourceUnits.bytes(Long.parseLong(size));
+		}
+	}
+
+	private final List<Tier> tiers;
+
+	private final AtomicLong spills = new AtomicLong();
+
+	public StorageAllocator(final List<Tier> tiers) {
+		if (tiers.isEmpty()) {
+			throw new IllegalArgumentException(
+					"At least one storage tier is required");
+		}
+		this.tiers = Collections.unmodifiableList(new ArrayList<>(tiers));
+	}
+
+	/**
+	 * Creates a temporary directory on the fastest tier that can take the
+	 * expected number of bytes. If none can, the last tier is used anyway.
+	 */
+	public Allocation allocate(final String prefix, final long expectedBytes)
+			throws IOException {
+		Tier chosen = this.tiers.get(this.tiers.size() - 1);
+		synchronized (this) {
+			for (final Tier tier : this.tiers) {
+				if (tier.canTake(expectedBytes)) {
+					chosen = tier;
+					break;
+				}
+			}
+			if (chosen != this.tiers.get(0)) {
+				this.spills.incrementAndGet();
+				StorageAllocator.logger.debug(
+						"Spilling {} ({} bytes) to {}", prefix,
+						expectedBytes, chosen);
+			}
+			chosen.reserved.addAndGet(expectedBytes);
+			chosen.allocations.incrementAndGet();
+		}
+		try {
+			return new Allocation(chosen, FileAccess.createTempDirectory(
+					chosen.root, prefix), expectedBytes);
+		} catch (final IOException e) {
+			chosen.reserved.addAndGet(-expectedBytes);
+			chosen.allocations.decrementAndGet();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return how many directories couldn't be placed on the fastest tier
+	 */
+	public long getSpills() {
+		return this.spills.get();
+	}
+
+	public List<Tier> getTiers() {
+		return this.tiers;
+	}
+}
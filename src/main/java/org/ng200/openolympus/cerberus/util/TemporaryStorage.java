@@ -23,7 +23,6 @@
 package org.ng200.openolympus.cerberus.util;
 
 import java.io.IOException;
-import java.nio.file.FileSystems;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
@@ -89,8 +88,14 @@ public class TemporaryStorage implements AutoCloseable {
 
 	private boolean closed;
 
-	private static final Path RAMDISK_ROOT = FileSystems.getDefault().getPath(
-			"/tmp/ramdisk");
+	private transient StorageAllocator.Allocation allocation;
+
+	/**
+	 * The space reserved for storages whose size isn't known in advance.
+	 */
+	private static final long DEFAULT_RESERVATION = Long.getLong(
+			"cerberus.storage.defaultReservation",
+			ResourceUnits.mebibytes(16));
 
 	private static ConcurrentMap<SolutionJudge, List<TemporaryStorage>> storages = new ConcurrentHashMap<>();
 
@@ -99,13 +104,24 @@ public class TemporaryStorage implements AutoCloseable {
 	}
 
 	public TemporaryStorage(final SolutionJudge holder) throws IOException {
+		this(holder, TemporaryStorage.DEFAULT_RESERVATION);
+	}
+
+	public TemporaryStorage(final SolutionJudge holder,
+			final long expectedBytes) throws IOException {
+		this.allocation = StorageAllocator.getDefault().allocate("cerberus",
+				expectedBytes);
+		this.directory = this.allocation.getPath();
 		TemporaryStorage.register(holder, this);
-		if (FileAccess.exists(TemporaryStorage.RAMDISK_ROOT)) {
-			this.directory = FileAccess.createTempDirectory(
-					TemporaryStorage.RAMDISK_ROOT, "cerberus");
-		} else {
-			this.directory = FileAccess.createTempDirectory("cerberus");
-		}
+	}
+
+	/**
+	 * Creates a directory that lives as long as the process, on the fastest
+	 * storage tier that has room left.
+	 */
+	public static Path createTemporaryDirectory(final String prefix)
+			throws IOException {
+		return StorageAllocator.getDefault().allocate(prefix, 0).getPath();
 	}
 
 	private void assertNotClosed() {
@@ -119,6 +135,27 @@ public class TemporaryStorage implements AutoCloseable {
 	public synchronized void close() throws IOException {
 		FileAccess.deleteDirectoryByWalking(this.directory);
 		this.closed = true;
+		if (this.allocation != null) {
+			this.allocation.close();
+		}
+	}
+
+	/**
+	 * Returns space reserved with {@link #reserve(long)}.
+	 */
+	public void release(final long bytes) {
+		if (this.allocation != null) {
+			this.allocation.release(bytes);
+		}
+	}
+
+	/**
+	 * Reserves space for files that are about to be put into this storage.
+	 */
+	public void reserve(final long bytes) {
+		if (this.allocation != null) {
+			this.allocation.reserve(bytes);
+		}
 	}
 
 	public synchronized Path getPath() {
@@ -0,0 +1,132 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014-2015 Nick Guletskii
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ng200.openolympus.cerberus.verifiers;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+
+import org.ng200.openolympus.FileAccess;
+import org.ng200.openolympus.cerberus.AnswerCheckResult;
+import org.ng200.openolympus.cerberus.VerifierResult;
+
+/**
+ * Checks the user's output while it is being written. Once the output
+ * definitely differs from the expected answer, further writes fail, which
+ * tells the process launcher to stop the program.
+ */
+public class StreamingWhitespaceTokenizedVerifier extends OutputStream {
+
+	private final BufferedReader expected;
+	private final WhitespaceTokenizedComparator comparator;
+	private final CharsetDecoder decoder;
+	private final ByteBuffer bytes = ByteBuffer.allocate(8192);
+	private final CharBuffer chars = CharBuffer.allocate(8192);
+	private boolean finished = false;
+
+	public StreamingWhitespaceTokenizedVerifier(final Path file,
+			final Charset charset) throws IOException {
+		this.expected = FileAccess.newBufferedReader(file, charset);
+		this.comparator = new WhitespaceTokenizedComparator(this.expected);
+		this.decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.expected.close();
+	}
+
+	private void compareDecoded() throws IOException {
+		this.chars.flip();
+		this.comparator.accept(this.chars);
+		this.chars.clear();
+	}
+
+	private void decode(final boolean endOfInput) throws IOException {
+		this.bytes.flip();
+		while (this.decoder.decode(this.bytes, this.chars, endOfInput)
+				.isOverflow()) {
+			this.compareDecoded();
+		}
+		this.compareDecoded();
+		this.bytes.compact();
+	}
+
+	public synchronized VerifierResult getResult() throws IOException {
+		if (!this.finished) {
+			this.decode(true);
+			this.decoder.flush(this.chars);
+			this.compareDecoded();
+			this.comparator.finish();
+			this.finished = true;
+			this.expected.close();
+		}
+		if (this.comparator.isMismatch()) {
+			return new VerifierResult(
+					AnswerCheckResult.CheckingResultType.WRONG_ANSWER,
+					"verifier.tokens.mismatch");
+		}
+		return new VerifierResult(AnswerCheckResult.CheckingResultType.OK,
+				"verifier.tokens.match");
+	}
+
+	public synchronized boolean isMismatch() {
+		return this.comparator.isMismatch();
+	}
+
+	@Override
+	public void write(final byte[] b, int off, int len) throws IOException {
+		synchronized (this) {
+			while (len > 0) {
+				if (this.comparator.isMismatch()) {
+					throw new IOException(
+							"The output doesn't match the expected answer");
+				}
+				final int chunk = Math.min(len, this.bytes.remaining());
+				this.bytes.put(b, off, chunk);
+				off += chunk;
+				len -= chunk;
+				this.decode(false);
+			}
+			if (this.comparator.isMismatch()) {
+				throw new IOException(
+						"The output doesn't match the expected answer");
+			}
+		}
+	}
+
+	@Override
+	public void write(final int b) throws IOException {
+		this.write(new byte[] {
+			(byte) b
+		}, 0, 1);
+	}
+}
@@ -0,0 +1,60 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014-2015 Nick Guletskii
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ng200.openolympus.cerberus.verifiers;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+
+import org.ng200.openolympus.FileAccess;
+import org.ng200.openolympus.cerberus.AnswerCheckResult;
+
+/**
+ * Decides whether the user's output answers a test. Both sides are read
+ * from channels, so implementations can check outputs of any size using a
+ * fixed amount of memory.
+ */
+public interface Verifier {
+
+	/**
+	 * Checks files by reading them through channels rather than loading them
+	 * into memory.
+	 */
+	public default AnswerCheckResult verify(final Path userOutput,
+			final Path expectedAnswer, final Charset charset)
+			throws IOException {
+		try (ReadableByteChannel user = FileAccess.newByteChannel(userOutput);
+				ReadableByteChannel expected = FileAccess
+						.newByteChannel(expectedAnswer)) {
+			return this.verify(user, expected, charset);
+		}
+	}
+
+	/**
+	 * The channels belong to the caller, who closes them afterwards.
+	 */
+	public AnswerCheckResult verify(ReadableByteChannel userOutput,
+			ReadableByteChannel expectedAnswer, Charset charset)
+			throws IOException;
+}
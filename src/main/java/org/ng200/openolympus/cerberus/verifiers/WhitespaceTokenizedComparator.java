@@ -0,0 +1,134 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014-2015 Nick Guletskii
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ng200.openolympus.cerberus.verifiers;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+
+/**
+ * Incrementally compares the user's output with the expected answer using
+ * the same rules as {@link WhitespaceTokenizedVerifier}: runs of whitespace
+ * within a line are equivalent to a single space, trailing whitespace on
+ * every line and at the end of the output is ignored.
+ *
+ * Both sides are reduced to a sequence of non-whitespace characters, each
+ * preceded by the number of line breaks and whether there was any other
+ * whitespace since the previous character, so that only a constant amount of
+ * memory is used no matter how long the output is.
+ */
+public class WhitespaceTokenizedComparator {
+
+	private static boolean isWhitespace(final char c) {
+		// Same as \s in java.util.regex
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B'
+				|| c == '\f' || c == '\r';
+	}
+
+	private final Reader expected;
+	private final char[] expectedBuffer = new char[8192];
+	private int expectedPosition = 0;
+	private int expectedLimit = 0;
+	private long expectedNewlines;
+	private boolean expectedSpace;
+
+	private long userNewlines = 0;
+	private boolean userSpace = false;
+
+	private boolean mismatch = false;
+
+	public WhitespaceTokenizedComparator(final Reader expected) {
+		this.expected = expected;
+	}
+
+	/**
+	 * Feeds a chunk of the user's output to the comparator.
+	 *
+	 * @return false if the output already definitely differs from the
+	 *         expected answer
+	 */
+	public boolean accept(final CharBuffer chars) throws IOException {
+		while (!this.mismatch && chars.hasRemaining()) {
+			final char c = chars.get();
+			if (c == '\n') {
+				this.userSpace = false;
+				this.userNewlines++;
+			} else if (WhitespaceTokenizedComparator.isWhitespace(c)) {
+				this.userSpace = true;
+			} else {
+				final int expectedChar = this.nextExpected();
+				if (expectedChar != c
+						|| this.expectedNewlines != this.userNewlines
+						|| this.expectedSpace != this.userSpace) {
+					this.mismatch = true;
+				}
+				this.userNewlines = 0;
+				this.userSpace = false;
+			}
+		}
+		return !this.mismatch;
+	}
+
+	/**
+	 * Should be called after the user's output has been fully consumed.
+	 *
+	 * @return true if the output matches the expected answer
+	 */
+	public boolean finish() throws IOException {
+		if (this.mismatch) {
+			return false;
+		}
+		if (this.nextExpected() != -1) {
+			this.mismatch = true;
+		}
+		return !this.mismatch;
+	}
+
+	public boolean isMismatch() {
+		return this.mismatch;
+	}
+
+	private int nextExpected() throws IOException {
+		this.expectedNewlines = 0;
+		this.expectedSpace = false;
+		while (true) {
+			if (this.expectedPosition == this.expectedLimit) {
+				this.expectedLimit = this.expected.read(this.expectedBuffer);
+				this.expectedPosition = 0;
+				if (this.expectedLimit == -1) {
+					this.expectedLimit = 0;
+					return -1;
+				}
+			}
+			final char c = this.expectedBuffer[this.expectedPosition++];
+			if (c == '\n') {
+				this.expectedSpace = false;
+				this.expectedNewlines++;
+			} else if (WhitespaceTokenizedComparator.isWhitespace(c)) {
+				this.expectedSpace = true;
+			} else {
+				return c;
+			}
+		}
+	}
+}
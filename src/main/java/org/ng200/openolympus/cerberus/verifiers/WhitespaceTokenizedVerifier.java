@@ -22,69 +22,84 @@
  */
 package org.ng200.openolympus.cerberus.verifiers;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 import java.nio.file.Path;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import org.ng200.openolympus.FileAccess;
 import org.ng200.openolympus.cerberus.AnswerCheckResult;
 import org.ng200.openolympus.cerberus.VerifierResult;
 
-public class WhitespaceTokenizedVerifier {
+/**
+ * Compares the outputs token by token: runs of whitespace within a line are
+ * equivalent, trailing whitespace is ignored. See
+ * {@link WhitespaceTokenizedComparator}.
+ */
+public class WhitespaceTokenizedVerifier implements Verifier {
 
-	private Path file;
+	private static final int BUFFER_SIZE = 8192;
 
-	private final Pattern removeWhitespaceBeforeEOL = Pattern.compile("\\s+$");
-	private final Pattern removeDuplicateWhitespace = Pattern.compile("(\\s)+");
+	private static Reader newReader(final ReadableByteChannel channel,
+			final Charset charset) {
+		final CharsetDecoder decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		return Channels.newReader(channel, decoder,
+				WhitespaceTokenizedVerifier.BUFFER_SIZE);
+	}
+
+	private Path file;
 
 	public WhitespaceTokenizedVerifier() {
 		// Serialization constructor
 	}
 
-	public Path getFile() {
-		return file;
-	}
-
-	public void setFile(Path file) {
+	public WhitespaceTokenizedVerifier(final Path file) {
 		this.file = file;
 	}
 
-	public WhitespaceTokenizedVerifier(final Path file) {
-		this.file = file;
+	public Path getFile() {
+		return file;
 	}
 
 	public VerifierResult isAnswerCorrect(final byte[] userByteArray,
 			final Charset charset) throws IOException {
-
-		String userAnswer = new String(userByteArray, charset);
-		String properAnswer = null;
-		userAnswer = Stream
-				.of(userAnswer.split("\n"))
-				.map((line) -> this.removeWhitespaceBeforeEOL.matcher(line)
-						.replaceAll(""))
-				.map((line) -> this.removeDuplicateWhitespace.matcher(line)
-						.replaceAll(" ")).collect(Collectors.joining("\n"));
-
-		try (BufferedReader properAnswerReader = FileAccess.newBufferedReader(
-				this.file, charset)) {
-			properAnswer = properAnswerReader
-					.lines()
-					.map((line) -> this.removeWhitespaceBeforeEOL.matcher(line)
-							.replaceAll(""))
-					.map((line) -> this.removeDuplicateWhitespace.matcher(line)
-							.replaceAll(" ")).collect(Collectors.joining("\n"));
+		try (ReadableByteChannel expected = FileAccess.newByteChannel(
+				this.file)) {
+			return this.verify(
+					Channels.newChannel(new ByteArrayInputStream(
+							userByteArray)), expected, charset);
 		}
+	}
 
-		userAnswer = this.removeWhitespaceBeforeEOL.matcher(userAnswer)
-				.replaceAll("");
-		properAnswer = this.removeWhitespaceBeforeEOL.matcher(properAnswer)
-				.replaceAll("");
+	public void setFile(Path file) {
+		this.file = file;
+	}
 
-		if (!userAnswer.equals(properAnswer)) {
+	@Override
+	public VerifierResult verify(final ReadableByteChannel userOutput,
+			final ReadableByteChannel expectedAnswer, final Charset charset)
+			throws IOException {
+		final WhitespaceTokenizedComparator comparator = new WhitespaceTokenizedComparator(
+				WhitespaceTokenizedVerifier.newReader(expectedAnswer, charset));
+		final Reader user = WhitespaceTokenizedVerifier.newReader(userOutput,
+				charset);
+		final CharBuffer chars = CharBuffer
+				.allocate(WhitespaceTokenizedVerifier.BUFFER_SIZE);
+		boolean matching = true;
+		while (matching && user.read(chars) != -1) {
+			chars.flip();
+			matching = comparator.accept(chars);
+			chars.clear();
+		}
+		if (!matching || !comparator.finish()) {
 			return new VerifierResult(
 					AnswerCheckResult.CheckingResultType.WRONG_ANSWER,
 					"verifier.tokens.mismatch");
@@ -0,0 +1,224 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014-2015 Nick Guletskii
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+/*
+ * Runs a program inside a jail with resource limits and reports a verdict
+ * in the same format as olympus_watchdog. Meant to be started by
+ * "unshare --user --map-root-user --pid --fork ...", so that it needs no
+ * privileges on the host.
+ *
+ * Usage: namespace_runner JAIL VERDICT CPU_MS WALL_MS MEMORY DISK -- PROGRAM [ARGS...]
+ */
+#define _GNU_SOURCE
+#include <errno.h>
+#include <fcntl.h>
+#include <linux/capability.h>
+#include <signal.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <sys/prctl.h>
+#include <sys/resource.h>
+#include <sys/syscall.h>
+#include <sys/time.h>
+#include <sys/types.h>
+#include <sys/wait.h>
+#include <time.h>
+#include <unistd.h>
+
+#ifndef SECBIT_NOROOT
+#define SECBIT_NOROOT 0x01
+#define SECBIT_NOROOT_LOCKED 0x02
+#define SECBIT_NO_SETUID_FIXUP 0x04
+#define SECBIT_NO_SETUID_FIXUP_LOCKED 0x08
+#define SECBIT_KEEP_CAPS_LOCKED 0x20
+#endif
+
+static volatile sig_atomic_t wall_time_exceeded = 0;
+static pid_t child = -1;
+
+static void on_alarm(int signal_number) {
+	(void) signal_number;
+	wall_time_exceeded = 1;
+	if (child > 0) {
+		kill(child, SIGKILL);
+	}
+}
+
+static long long elapsed_ms(const struct timespec *start) {
+	struct timespec now;
+	clock_gettime(CLOCK_MONOTONIC, &now);
+	return (now.tv_sec - start->tv_sec) * 1000LL
+			+ (now.tv_nsec - start->tv_nsec) / 1000000LL;
+}
+
+static int write_verdict(const char *path, const char *verdict) {
+	int fd = open(path, O_WRONLY | O_CREAT | O_TRUNC | O_CLOEXEC, 0644);
+	if (fd < 0) {
+		return 1;
+	}
+	size_t length = strlen(verdict);
+	ssize_t written = write(fd, verdict, length);
+	close(fd);
+	return written == (ssize_t) length ? 0 : 1;
+}
+
+static void set_limit(int resource, rlim_t value) {
+	struct rlimit limit = { value, value };
+	if (setrlimit(resource, &limit) != 0) {
+		_exit(127);
+	}
+}
+
+static void drop_privileges(void) {
+	/* Root inside the namespace must not keep capabilities after exec */
+	if (prctl(PR_SET_SECUREBITS, SECBIT_NOROOT | SECBIT_NOROOT_LOCKED
+			| SECBIT_NO_SETUID_FIXUP | SECBIT_NO_SETUID_FIXUP_LOCKED
+			| SECBIT_KEEP_CAPS_LOCKED) != 0) {
+		_exit(127);
+	}
+	for (int capability = 0; capability <= CAP_LAST_CAP; capability++) {
+		prctl(PR_CAPBSET_DROP, capability, 0, 0, 0);
+	}
+	struct __user_cap_header_struct header = { _LINUX_CAPABILITY_VERSION_3, 0 };
+	struct __user_cap_data_struct data[2];
+	memset(data, 0, sizeof(data));
+	if (syscall(SYS_capset, &header, data) != 0) {
+		_exit(127);
+	}
+	if (prctl(PR_SET_NO_NEW_PRIVS, 1, 0, 0, 0) != 0) {
+		_exit(127);
+	}
+}
+
+int main(int argc, char **argv) {
+	if (argc < 9 || strcmp(argv[7], "--") != 0) {
+		fprintf(stderr, "Usage: %s JAIL VERDICT CPU_MS WALL_MS MEMORY DISK"
+				" -- PROGRAM [ARGS...]\n", argv[0]);
+		return 2;
+	}
+	const char *jail = argv[1];
+	const char *verdict_path = argv[2];
+	long long cpu_limit = atoll(argv[3]);
+	long long wall_limit = atoll(argv[4]);
+	long long memory_limit = atoll(argv[5]);
+	long long disk_limit = atoll(argv[6]);
+
+	int exec_status[2];
+	if (pipe2(exec_status, O_CLOEXEC) != 0) {
+		return write_verdict(verdict_path, "INTERNAL_ERROR");
+	}
+
+	struct timespec start;
+	clock_gettime(CLOCK_MONOTONIC, &start);
+
+	child = fork();
+	if (child < 0) {
+		return write_verdict(verdict_path, "INTERNAL_ERROR");
+	}
+	if (child == 0) {
+		close(exec_status[0]);
+		if (chdir(jail) != 0 || chroot(".") != 0 || chdir("/") != 0) {
+			int error = errno;
+			(void) !write(exec_status[1], &error, sizeof(error));
+			_exit(127);
+		}
+		drop_privileges();
+		set_limit(RLIMIT_CORE, 0);
+		if (cpu_limit > 0) {
+			/* Whole seconds, rounded up: the exact check happens below */
+			set_limit(RLIMIT_CPU, (rlim_t) ((cpu_limit + 999) / 1000 + 1));
+		}
+		if (memory_limit > 0) {
+			set_limit(RLIMIT_AS, (rlim_t) memory_limit);
+		}
+		if (disk_limit > 0) {
+			set_limit(RLIMIT_FSIZE, (rlim_t) disk_limit);
+		}
+		execv(argv[8], argv + 8);
+		int error = errno;
+		(void) !write(exec_status[1], &error, sizeof(error));
+		_exit(127);
+	}
+	close(exec_status[1]);
+
+	struct sigaction action;
+	memset(&action, 0, sizeof(action));
+	action.sa_handler = on_alarm;
+	sigaction(SIGALRM, &action, NULL);
+	if (wall_limit > 0) {
+		struct itimerval timer;
+		memset(&timer, 0, sizeof(timer));
+		timer.it_value.tv_sec = wall_limit / 1000;
+		timer.it_value.tv_usec = (wall_limit % 1000) * 1000;
+		setitimer(ITIMER_REAL, &timer, NULL);
+	}
+
+	int exec_error = 0;
+	ssize_t exec_failed;
+	do {
+		exec_failed = read(exec_status[0], &exec_error, sizeof(exec_error));
+	} while (exec_failed < 0 && errno == EINTR);
+	close(exec_status[0]);
+
+	int status;
+	struct rusage usage;
+	while (wait4(child, &status, 0, &usage) < 0) {
+		if (errno != EINTR) {
+			return write_verdict(verdict_path, "INTERNAL_ERROR");
+		}
+	}
+	long long real_time = elapsed_ms(&start);
+
+	if (exec_failed > 0) {
+		fprintf(stderr, "Couldn't start the program: %s\n",
+				strerror(exec_error));
+		return write_verdict(verdict_path, "INTERNAL_ERROR");
+	}
+
+	long long cpu_time = usage.ru_utime.tv_sec * 1000LL
+			+ usage.ru_utime.tv_usec / 1000 + usage.ru_stime.tv_sec * 1000LL
+			+ usage.ru_stime.tv_usec / 1000;
+	long long memory_peak = usage.ru_maxrss * 1024LL;
+
+	const char *type;
+	if (wall_time_exceeded || (cpu_limit > 0 && cpu_time > cpu_limit)
+			|| (WIFSIGNALED(status) && WTERMSIG(status) == SIGXCPU)) {
+		type = "TIME_LIMIT";
+	} else if (memory_limit > 0 && memory_peak > memory_limit) {
+		type = "MEMORY_LIMIT";
+	} else if (WIFSIGNALED(status) && WTERMSIG(status) == SIGXFSZ) {
+		type = "OUTPUT_LIMIT";
+	} else if (WIFSIGNALED(status)) {
+		type = "ABNORMAL_TERMINATION";
+	} else if (WEXITSTATUS(status) != 0) {
+		type = "RUNTIME_ERROR";
+	} else {
+		type = "OK";
+	}
+
+	char verdict[256];
+	snprintf(verdict, sizeof(verdict), "%s(%lld, %lld, %lld)", type,
+			real_time, cpu_time, memory_peak);
+	return write_verdict(verdict_path, verdict);
+}
@@ -0,0 +1,117 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014-2015 Nick Guletskii
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ng200.openolympus.cerberus.tests;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.ng200.openolympus.FileAccess;
+import org.ng200.openolympus.cerberus.ExecutionResult;
+import org.ng200.openolympus.cerberus.executors.Executor;
+import org.ng200.openolympus.cerberus.executors.JailPool;
+import org.ng200.openolympus.cerberus.executors.NamespaceExecutor;
+import org.ng200.openolympus.cerberus.executors.SandboxedExecutor;
+import org.ng200.openolympus.cerberus.util.ProcessLauncher;
+
+/**
+ * Compares the launch latency of the namespace executor against the
+ * sudo/olympus_watchdog path by running a program that exits immediately.
+ * The watchdog path is skipped if olympus_watchdog isn't installed.
+ *
+ * Usage: NamespaceExecutorBenchmark [iterations]
+ */
+public class NamespaceExecutorBenchmark {
+
+	private static boolean isInstalled(final String program) {
+		for (final String directory : System.getenv("PATH").split(":")) {
+			if (FileAccess.isExecutable(FileSystems.getDefault()
+					.getPath(directory, program))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public static void main(final String[] args) throws Exception {
+		final int iterations = args.length > 0 ? Integer.parseInt(args[0])
+				: 100;
+
+		final Path directory = Files.createTempDirectory("cerberus-benchmark");
+		final Path source = directory.resolve("true.c");
+		final Path program = directory.resolve("true");
+		FileAccess.writeUTF8StringToFile(source, "int main() { return 0; }\n");
+		new ProcessLauncher("gcc", "-O2", "-static", "-o", program.toString(),
+				source.toString()).setTimeout(20000).execute();
+
+		// Jails are built in a directory named after the template
+		final Path template = directory.resolve("chroot");
+		FileAccess.createDirectories(template);
+		try (JailPool pool = new JailPool(template, directory.resolve("jails"),
+				2, 1);
+				NamespaceExecutor executor = new NamespaceExecutor(pool)) {
+			NamespaceExecutorBenchmark.measure("namespaces", iterations,
+					executor, program);
+		}
+
+		if (NamespaceExecutorBenchmark.isInstalled("olympus_watchdog")) {
+			try (SandboxedExecutor executor = new SandboxedExecutor(
+					JailPool.getDefault())) {
+				NamespaceExecutorBenchmark.measure("olympus_watchdog",
+						iterations, executor, program);
+			}
+		} else {
+			System.out.println("olympus_watchdog isn't installed, skipping");
+		}
+
+		FileAccess.deleteDirectoryByWalking(directory);
+	}
+
+	private static void measure(final String name, final int iterations,
+			final Executor executor, final Path program) throws Exception {
+		executor.setCpuLimit(1000).setTimeLimit(2000)
+				.setMemoryLimit(64 * 1024 * 1024)
+				.setDiskLimit(1024 * 1024);
+
+		// Warm up, so that installing the program isn't measured
+		for (int i = 0; i < Math.min(iterations, 10); i++) {
+			executor.execute(program);
+			executor.reset();
+		}
+
+		final long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			final ExecutionResult result = executor.execute(program);
+			if (result.getResultType() != ExecutionResult.ExecutionResultType.OK) {
+				throw new IllegalStateException("Unexpected verdict: "
+						+ result.getResultType());
+			}
+			executor.reset();
+		}
+		final long elapsed = System.nanoTime() - start;
+
+		System.out.println(String.format("%-16s %8d us/run", name,
+				TimeUnit.NANOSECONDS.toMicros(elapsed / iterations)));
+	}
+}
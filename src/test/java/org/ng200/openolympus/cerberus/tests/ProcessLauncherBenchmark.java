@@ -0,0 +1,95 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014-2015 Nick Guletskii
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ng200.openolympus.cerberus.tests;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.exec.CommandLine;
+import org.apache.commons.exec.DefaultExecutor;
+import org.apache.commons.exec.ExecuteWatchdog;
+import org.apache.commons.exec.PumpStreamHandler;
+import org.ng200.openolympus.cerberus.util.ExceptionalRunnable;
+import org.ng200.openolympus.cerberus.util.ProcessLauncher;
+
+/**
+ * Compares launch-to-exit latency and the number of threads started per run
+ * of commons-exec against {@link ProcessLauncher}.
+ *
+ * Usage: ProcessLauncherBenchmark [iterations] [command [arguments...]]
+ */
+public class ProcessLauncherBenchmark {
+
+	private static void measure(final String name, final int iterations,
+			final ExceptionalRunnable<Exception> run) throws Exception {
+		final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+		// Warm up both paths so that class loading isn't measured
+		for (int i = 0; i < Math.min(iterations, 10); i++) {
+			run.run();
+		}
+
+		final long startedThreads = threads.getTotalStartedThreadCount();
+		final long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			run.run();
+		}
+		final long elapsed = System.nanoTime() - start;
+		final long threadsPerRun = (threads.getTotalStartedThreadCount() - startedThreads)
+				/ iterations;
+
+		System.out.println(String.format(
+				"%-16s %8d us/run %4d threads started/run", name,
+				TimeUnit.NANOSECONDS.toMicros(elapsed / iterations),
+				threadsPerRun));
+	}
+
+	public static void main(final String[] args) throws Exception {
+		final int iterations = args.length > 0 ? Integer.parseInt(args[0])
+				: 200;
+		final List<String> command = args.length > 1 ? Arrays.asList(args)
+				.subList(1, args.length) : Arrays.asList("/bin/echo",
+				"hello world");
+
+		ProcessLauncherBenchmark.measure("commons-exec", iterations, () -> {
+			final CommandLine commandLine = new CommandLine(command.get(0));
+			command.subList(1, command.size()).forEach(
+					(arg) -> commandLine.addArgument(arg));
+			final DefaultExecutor executor = new DefaultExecutor();
+			executor.setWatchdog(new ExecuteWatchdog(20000));
+			executor.setStreamHandler(new PumpStreamHandler(
+					new ByteArrayOutputStream(), new ByteArrayOutputStream()));
+			executor.execute(commandLine);
+		});
+
+		ProcessLauncherBenchmark.measure("ProcessLauncher", iterations, () -> {
+			new ProcessLauncher(command).setTimeout(20000)
+					.setOutputStream(new ByteArrayOutputStream())
+					.setErrorStream(new ByteArrayOutputStream()).execute();
+		});
+	}
+}
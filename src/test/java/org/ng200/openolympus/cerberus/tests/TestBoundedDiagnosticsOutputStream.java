@@ -0,0 +1,94 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014-2015 Nick Guletskii
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ng200.openolympus.cerberus.tests;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ng200.openolympus.cerberus.compilers.BoundedDiagnosticsOutputStream;
+
+public class TestBoundedDiagnosticsOutputStream {
+
+	private static String capture(final BoundedDiagnosticsOutputStream stream,
+			final String output) throws IOException {
+		final byte[] bytes = output.getBytes(StandardCharsets.UTF_8);
+		// Split the writes to exercise prefixes spanning several calls
+		stream.write(bytes, 0, bytes.length / 3);
+		stream.write(bytes, bytes.length / 3, bytes.length - bytes.length / 3);
+		return stream.toString(StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testPrefixesAreStripped() throws IOException {
+		Assert.assertEquals(
+				"1:12: error: 'x' was not declared\n"
+						+ "  int main(){x}\n"
+						+ " In function 'int main()':\n",
+				TestBoundedDiagnosticsOutputStream
+						.capture(
+								new BoundedDiagnosticsOutputStream(Arrays
+										.asList("/tmp/a/main.cpp:",
+												"/tmp/b.cpp:")),
+								"/tmp/a/main.cpp:1:12: error: 'x' was not declared\n"
+										+ "  int main(){x}\n"
+										+ "/tmp/b.cpp: In function 'int main()':\n"));
+	}
+
+	@Test
+	public void testShortLines() throws IOException {
+		Assert.assertEquals("a\n\nb", TestBoundedDiagnosticsOutputStream
+				.capture(new BoundedDiagnosticsOutputStream(Arrays
+						.asList("/very/long/prefix:")), "a\n\nb"));
+	}
+
+	@Test
+	public void testHeadAndTailAreKept() throws IOException {
+		final StringBuilder output = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			output.append("line ").append(i).append('\n');
+		}
+		final BoundedDiagnosticsOutputStream stream = new BoundedDiagnosticsOutputStream(
+				Collections.emptyList(), 40);
+		final String captured = TestBoundedDiagnosticsOutputStream.capture(
+				stream, output.toString());
+
+		Assert.assertTrue(captured.startsWith("line 0\nline 1\n"));
+		Assert.assertTrue(captured.endsWith("line 998\nline 999\n"));
+		Assert.assertEquals(output.length() - 40, stream.getTruncatedBytes());
+		Assert.assertTrue(captured.contains("[" + (output.length() - 40)
+				+ " bytes truncated]"));
+	}
+
+	@Test
+	public void testUntruncated() throws IOException {
+		final BoundedDiagnosticsOutputStream stream = new BoundedDiagnosticsOutputStream(
+				Collections.emptyList(), 40);
+		Assert.assertEquals("short\n",
+				TestBoundedDiagnosticsOutputStream.capture(stream, "short\n"));
+		Assert.assertEquals(0, stream.getTruncatedBytes());
+	}
+}
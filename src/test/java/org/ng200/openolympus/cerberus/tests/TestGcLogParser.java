@@ -0,0 +1,73 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014-2015 Nick Guletskii
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ng200.openolympus.cerberus.tests;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ng200.openolympus.cerberus.executors.GcLogParser;
+
+public class TestGcLogParser {
+
+	@Test
+	public void testEmpty() {
+		Assert.assertEquals(-1, GcLogParser.parse("Using G1\n"));
+	}
+
+	@Test
+	public void testHeapAtExit() {
+		Assert.assertEquals(
+				21648 * 1024,
+				GcLogParser
+						.parse("Using G1\n"
+								+ "Heap\n"
+								+ " garbage-first heap   total 65536K, used 21648K [0x00000000fc000000, 0x0000000100000000)\n"
+								+ "  region size 1024K, 1 young (1024K), 0 survivors (0K)\n"
+								+ " Metaspace       used 74K, committed 320K, reserved 1114112K\n"
+								+ "  class space    used 2K, committed 128K, reserved 1048576K\n"));
+	}
+
+	@Test
+	public void testPeakBeforeCollection() {
+		Assert.assertEquals(
+				16 * 1024 * 1024,
+				GcLogParser
+						.parse("Using Serial\n"
+								+ "GC(0) Pause Young (Allocation Failure) 16M->15M(61M) 8.860ms\n"
+								+ "Heap\n"
+								+ " def new generation   total 19648K, used 883K [0x00000000fc000000, 0x00000000fd550000, 0x00000000fd550000)\n"
+								+ "  eden space 17472K,  25% used [0x00000000fc000000, 0x00000000fc451038, 0x00000000fd110000)\n"
+								+ " tenured generation   total 43712K, used 14648K [0x00000000fd550000, 0x0000000100000000, 0x0000000100000000)\n"
+								+ "   the space 43712K,  33% used [0x00000000fd550000, 0x00000000fe39e2b0, 0x00000000fe39e400, 0x0000000100000000)\n"
+								+ " Metaspace       used 128K, committed 320K, reserved 1114112K\n"));
+	}
+
+	@Test
+	public void testGenerationsAreSummedAtExit() {
+		Assert.assertEquals(
+				(5883 + 14648) * 1024,
+				GcLogParser
+						.parse("Heap\n"
+								+ " def new generation   total 19648K, used 5883K [0x00000000fc000000, 0x00000000fd550000, 0x00000000fd550000)\n"
+								+ " tenured generation   total 43712K, used 14648K [0x00000000fd550000, 0x0000000100000000, 0x0000000100000000)\n"));
+	}
+}
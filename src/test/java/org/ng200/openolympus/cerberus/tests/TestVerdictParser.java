@@ -0,0 +1,71 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014-2015 Nick Guletskii
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ng200.openolympus.cerberus.tests;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ng200.openolympus.cerberus.ExecutionResult;
+import org.ng200.openolympus.cerberus.ExecutionResult.ExecutionResultType;
+import org.ng200.openolympus.cerberus.executors.VerdictParser;
+
+public class TestVerdictParser {
+
+	@Test
+	public void testBareType() {
+		final ExecutionResult result = VerdictParser.parse("INTERNAL_ERROR\n");
+		Assert.assertEquals(ExecutionResultType.INTERNAL_ERROR,
+				result.getResultType());
+		Assert.assertEquals(-1, result.getRealTime());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testMalformed() {
+		VerdictParser.parse("OK(1, 2");
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testOverflow() {
+		VerdictParser.parse("OK(1, 2, 99999999999999999999)");
+	}
+
+	@Test
+	public void testSecurityViolation() {
+		final ExecutionResult result = VerdictParser
+				.parse("SECURITY_VIOLATION(59)");
+		Assert.assertEquals(ExecutionResultType.SECURITY_VIOLATION,
+				result.getResultType());
+		Assert.assertEquals(59, result.getSyscall());
+	}
+
+	@Test
+	public void testValuesAbove32Bits() {
+		final ExecutionResult result = VerdictParser
+				.parse("MEMORY_LIMIT(12, 3000000000,5000000000)");
+		Assert.assertEquals(ExecutionResultType.MEMORY_LIMIT,
+				result.getResultType());
+		Assert.assertEquals(12, result.getRealTime());
+		Assert.assertEquals(3000000000L, result.getCpuTime());
+		Assert.assertEquals(5000000000L, result.getMemoryPeak());
+		Assert.assertEquals(-1, result.getSyscall());
+	}
+}
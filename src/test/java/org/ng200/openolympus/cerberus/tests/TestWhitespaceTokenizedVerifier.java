@@ -0,0 +1,130 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014-2015 Nick Guletskii
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ng200.openolympus.cerberus.tests;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ng200.openolympus.FileAccess;
+import org.ng200.openolympus.cerberus.AnswerCheckResult;
+import org.ng200.openolympus.cerberus.verifiers.StreamingWhitespaceTokenizedVerifier;
+import org.ng200.openolympus.cerberus.verifiers.WhitespaceTokenizedVerifier;
+
+public class TestWhitespaceTokenizedVerifier {
+
+	private static final String[][] CASES = {
+			{
+					"1 2 3\n", "1 2 3\n", "OK"
+			}, {
+					"1 2 3\n", "1 2 3", "OK"
+			}, {
+					"1 2 3\n", "  1   2\t3 \r\n\n", "WRONG_ANSWER"
+			}, {
+					"1 2 3\n", "1 2 4\n", "WRONG_ANSWER"
+			}, {
+					"1 2 3\n", "1 2 3 4\n", "WRONG_ANSWER"
+			}, {
+					"1 2 3\n", "1 2\n", "WRONG_ANSWER"
+			}, {
+					"1\n2\n", "1 2\n", "WRONG_ANSWER"
+			}, {
+					"1\n2\n", "1\n\n2\n", "WRONG_ANSWER"
+			}, {
+					"12\n", "1 2\n", "WRONG_ANSWER"
+			}, {
+					"", "\n", "OK"
+			}, {
+					"", "0", "WRONG_ANSWER"
+			}, {
+					"abc", "\u00e9bc", "WRONG_ANSWER"
+			}
+	};
+
+	private void check(final String expected, final String actual,
+			final AnswerCheckResult.CheckingResultType result)
+			throws IOException {
+		final Charset charset = StandardCharsets.UTF_8;
+		final Path file = Files.createTempFile("cerberus-verifier", ".txt");
+		final Path userFile = Files.createTempFile("cerberus-verifier",
+				".user");
+		try {
+			FileAccess.writeUTF8StringToFile(file, expected);
+			final byte[] bytes = actual.getBytes(charset);
+			FileAccess.write(userFile, bytes);
+			final String message = "Expected \"" + expected + "\", got \""
+					+ actual + "\"";
+
+			Assert.assertEquals(message, result,
+					new WhitespaceTokenizedVerifier()
+							.verify(userFile, file, charset)
+							.getCheckingResultType());
+
+			AnswerCheckResult.CheckingResultType streamingResult;
+			try (StreamingWhitespaceTokenizedVerifier verifier = new StreamingWhitespaceTokenizedVerifier(
+					file, charset)) {
+				try {
+					// Write one byte at a time to exercise chunk boundaries
+					for (final byte b : bytes) {
+						verifier.write(b);
+					}
+				} catch (final IOException e) {
+					Assert.assertTrue(verifier.isMismatch());
+				}
+				streamingResult = verifier.getResult()
+						.getCheckingResultType();
+			}
+
+			Assert.assertEquals(message, result, streamingResult);
+		} finally {
+			FileAccess.delete(file);
+			FileAccess.delete(userFile);
+		}
+	}
+
+	@Test
+	public void testVerifiers() throws IOException {
+		for (final String[] testCase : TestWhitespaceTokenizedVerifier.CASES) {
+			this.check(testCase[0], testCase[1],
+					AnswerCheckResult.CheckingResultType.valueOf(testCase[2]));
+		}
+	}
+
+	@Test
+	public void testOutputLongerThanBuffers() throws IOException {
+		final StringBuilder expected = new StringBuilder();
+		final StringBuilder actual = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			expected.append(i).append('\n');
+			actual.append(i).append(" \t\r\n");
+		}
+		this.check(expected.toString(), actual.toString(),
+				AnswerCheckResult.CheckingResultType.OK);
+		this.check(expected.toString(), actual.append('0').toString(),
+				AnswerCheckResult.CheckingResultType.WRONG_ANSWER);
+	}
+}